@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * The document used by the benchmarks, matching {@link CannedCouchDb#docJson(int)}.
+ */
+public class BenchDoc extends Document {
+	private String title;
+	private int count;
+	private double price;
+	private boolean active;
+	private List<String> tags;
+
+	public BenchDoc() {}
+
+	BenchDoc(int i) {
+		this.title = "Title " + i;
+		this.count = i;
+		this.price = i * 1.5;
+		this.active = true;
+		this.tags = Arrays.asList("alpha", "beta", "gamma");
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+
+	public List<String> getTags() {
+		return tags;
+	}
+
+	/**
+	 * A hand-written adapter, as an annotation processor would generate.
+	 */
+	static class Adapter extends DocumentTypeAdapter<BenchDoc> {
+
+		@Override
+		protected BenchDoc newInstance() {
+			return new BenchDoc();
+		}
+
+		@Override
+		protected void readField(JsonReader in, BenchDoc doc, String name) throws IOException {
+			if("title".equals(name)) {
+				doc.title = in.nextString();
+			} else if("count".equals(name)) {
+				doc.count = in.nextInt();
+			} else if("price".equals(name)) {
+				doc.price = in.nextDouble();
+			} else if("active".equals(name)) {
+				doc.active = in.nextBoolean();
+			} else if("tags".equals(name)) {
+				doc.tags = new ArrayList<String>();
+				in.beginArray();
+				while (in.hasNext()) {
+					doc.tags.add(in.nextString());
+				}
+				in.endArray();
+			} else {
+				in.skipValue();
+			}
+		}
+
+		@Override
+		protected void writeFields(JsonWriter out, BenchDoc doc) throws IOException {
+			out.name("title").value(doc.title);
+			out.name("count").value(doc.count);
+			out.name("price").value(doc.price);
+			out.name("active").value(doc.active);
+			out.name("tags").beginArray();
+			for (String tag : doc.tags) {
+				out.value(tag);
+			}
+			out.endArray();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process HTTP server answering every request with canned CouchDB response bytes,
+ * as to measure the client without a database.
+ * <p>Responses are chosen by path only; request bodies are read and discarded.
+ * @author Ahmed Yehia
+ */
+class CannedCouchDb {
+	static final String DB_NAME = "bench";
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	static {
+		// small responses would otherwise wait on delayed ACKs
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	final byte[] welcome = bytes("{\"couchdb\":\"Welcome\",\"version\":\"2.1.0\"}");
+	final byte[] dbInfo = bytes("{\"db_name\":\"" + DB_NAME + "\",\"doc_count\":0}");
+	final byte[] doc;
+	final byte[] saved = bytes("{\"ok\":true,\"id\":\"doc-1\",\"rev\":\"1-967a00dff5e02add41819138abb3284d\"}");
+	final byte[] bulkDocs;
+	final byte[] view;
+	final byte[] changes;
+	final byte[] find;
+
+	/**
+	 * @param rows The number of rows of the bulk, view, changes and <tt>_find</tt> responses.
+	 */
+	CannedCouchDb(int rows) throws IOException {
+		doc = bytes(docJson(1));
+		final StringBuilder bulk = new StringBuilder("[");
+		final StringBuilder viewRows = new StringBuilder("{\"total_rows\":" + rows + ",\"offset\":0,\"rows\":[");
+		final StringBuilder changeRows = new StringBuilder();
+		final StringBuilder findDocs = new StringBuilder("{\"docs\":[");
+		for (int i = 1; i <= rows; i++) {
+			final String sep = i < rows ? "," : "";
+			bulk.append("{\"ok\":true,\"id\":\"doc-" + i + "\",\"rev\":\"1-967a00dff5e02add41819138abb3284d\"}" + sep);
+			viewRows.append("{\"id\":\"doc-" + i + "\",\"key\":\"doc-" + i + "\",\"value\":" + i + ",\"doc\":" + docJson(i) + "}" + sep);
+			changeRows.append("{\"seq\":\"" + i + "-g1AAAABteJzLYWBgYMpgTmHgz8tPSTV0MDQy1zMAQsMckEQiQ1L9____szKYE0\",\"id\":\"doc-" + i
+					+ "\",\"changes\":[{\"rev\":\"1-967a00dff5e02add41819138abb3284d\"}],\"doc\":" + docJson(i) + "}\n");
+			findDocs.append(docJson(i) + sep);
+		}
+		bulkDocs = bytes(bulk.append("]").toString());
+		view = bytes(viewRows.append("]}").toString());
+		changes = bytes(changeRows.append("{\"last_seq\":\"" + rows + "\"}\n").toString());
+		find = bytes(findDocs.append("]}").toString());
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				drain(exchange.getRequestBody());
+				final byte[] body = respond(exchange.getRequestMethod(), exchange.getRequestURI().getPath());
+				exchange.getResponseHeaders().add("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, body.length);
+				final OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * @return A client to the stub database.
+	 */
+	CouchDbClient client() {
+		return new CouchDbClient(new CouchDbProperties(DB_NAME, false, "http",
+				"127.0.0.1", server.getAddress().getPort(), null, null).setMaxConnections(20));
+	}
+
+	void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private byte[] respond(String method, String path) {
+		final String db = "/" + DB_NAME + "/";
+		if(!path.startsWith(db)) {
+			return path.equals("/" + DB_NAME) ? dbInfo : welcome;
+		} else if(path.startsWith(db + "_bulk_docs")) {
+			return bulkDocs;
+		} else if(path.contains("/_view/") || path.startsWith(db + "_all_docs")) {
+			return view;
+		} else if(path.startsWith(db + "_changes")) {
+			return changes;
+		} else if(path.startsWith(db + "_find")) {
+			return find;
+		} else if("GET".equals(method)) {
+			return doc;
+		}
+		return saved;
+	}
+
+	static String docJson(int i) {
+		return "{\"_id\":\"doc-" + i + "\",\"_rev\":\"1-967a00dff5e02add41819138abb3284d\",\"title\":\"Title " + i
+				+ "\",\"count\":" + i + ",\"price\":" + (i * 1.5) + ",\"active\":true,\"tags\":[\"alpha\",\"beta\",\"gamma\"]}";
+	}
+
+	static byte[] bytes(String s) {
+		return s.getBytes(UTF_8);
+	}
+
+	private static void drain(InputStream in) throws IOException {
+		final byte[] buffer = new byte[8192];
+		while (in.read(buffer) != -1);
+		in.close();
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of client operations end to end, against {@link CannedCouchDb}.
+ * <p>The stub answers with canned bytes, the time measured is the client's own plus
+ * a loopback round trip.
+ * @author Ahmed Yehia
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientBenchmark {
+
+	@Param({ "100" })
+	int rows;
+
+	private CannedCouchDb server;
+	private CouchDbClient dbClient;
+	private List<BenchDoc> docs;
+
+	@Setup
+	public void setUp() throws Exception {
+		server = new CannedCouchDb(rows);
+		dbClient = server.client();
+		docs = new ArrayList<BenchDoc>(rows);
+		for (int i = 1; i <= rows; i++) {
+			docs.add(new BenchDoc(i));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		dbClient.shutdown();
+		server.stop();
+	}
+
+	@Benchmark
+	public Response save() {
+		return dbClient.save(new BenchDoc(1));
+	}
+
+	@Benchmark
+	public BenchDoc find() {
+		return dbClient.find(BenchDoc.class, "doc-1");
+	}
+
+	/**
+	 * Includes parsing the response list.
+	 */
+	@Benchmark
+	public List<Response> bulk() {
+		return dbClient.bulk(docs, true);
+	}
+
+	@Benchmark
+	public ViewResult<String, Integer, BenchDoc> queryView() {
+		return dbClient.view("bench/by_id").includeDocs(true).queryView(String.class, Integer.class, BenchDoc.class);
+	}
+
+	@Benchmark
+	public List<BenchDoc> findDocs() {
+		return dbClient.findDocs("{\"selector\":{\"count\":{\"$gt\":0}}}", BenchDoc.class);
+	}
+
+	@Benchmark
+	public void continuousChanges(Blackhole blackhole) {
+		final Changes changes = dbClient.changes().includeDocs(true).continuousChanges();
+		while (changes.hasNext()) {
+			blackhole.consume(changes.next());
+		}
+	}
+}
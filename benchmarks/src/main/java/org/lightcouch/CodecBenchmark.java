@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * Benchmarks of the {@link JsonCodec}s on document bodies, as read by <code>find()</code>
+ * and written by <code>save()</code>.
+ * @author Ahmed Yehia
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+	@Param({ "gson", "gson-adapter", "jackson" })
+	String codecName;
+
+	private JsonCodec codec;
+	private byte[] doc;
+	private BenchDoc benchDoc;
+	private ByteArrayOutputStream out;
+
+	@Setup
+	public void setUp() {
+		if("gson".equals(codecName)) {
+			codec = new GsonCodec(CouchDbClientBase.initGson(new GsonBuilder()));
+		} else if("gson-adapter".equals(codecName)) {
+			codec = new GsonCodec(CouchDbClientBase.initGson(new GsonBuilder().registerTypeAdapter(BenchDoc.class, new BenchDoc.Adapter())));
+		} else {
+			codec = new JacksonCodec();
+		}
+		doc = CannedCouchDb.bytes(CannedCouchDb.docJson(1));
+		benchDoc = new BenchDoc(1);
+		benchDoc.setId("doc-1");
+		out = new ByteArrayOutputStream(1024);
+	}
+
+	@Benchmark
+	public BenchDoc decode() throws IOException {
+		return codec.decode(new ByteArrayInputStream(doc), BenchDoc.class);
+	}
+
+	@Benchmark
+	public int encode() throws IOException {
+		out.reset();
+		codec.encode(benchDoc, out);
+		return out.size();
+	}
+}
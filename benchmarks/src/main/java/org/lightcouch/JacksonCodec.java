@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A {@link JsonCodec} on Jackson databind, mapping fields as Gson does: by field, 
+ * skipping <code>null</code> values, with the {@link Document} and {@link Attachment} 
+ * field names CouchDB expects.
+ * @author Ahmed Yehia
+ */
+public class JacksonCodec implements JsonCodec {
+
+	private final ObjectMapper mapper;
+
+	public JacksonCodec() {
+		mapper = new ObjectMapper()
+			.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+			.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+			.setSerializationInclusion(JsonInclude.Include.NON_NULL)
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+			.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false)
+			.addMixIn(Document.class, DocumentFields.class)
+			.addMixIn(Attachment.class, AttachmentFields.class);
+	}
+
+	public <T> T decode(InputStream in, Type type) throws IOException {
+		return mapper.readValue(in, mapper.getTypeFactory().constructType(type));
+	}
+
+	public void encode(Object object, OutputStream out) throws IOException {
+		mapper.writeValue(out, object);
+	}
+
+	abstract static class DocumentFields {
+		@JsonProperty("_id")
+		String id;
+		@JsonProperty("_rev")
+		String revision;
+		@JsonProperty("_attachments")
+		Map<String, Attachment> attachments;
+	}
+
+	abstract static class AttachmentFields {
+		@JsonProperty("content_type")
+		String contentType;
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.lightcouch.ChangesResult.Row;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+/**
+ * Benchmarks of the client CPU paths that need no connection: URI building,
+ * request serialization and response parsing from canned bytes.
+ * @author Ahmed Yehia
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmark {
+
+	private static final OutputStream NULL_OUTPUT = new OutputStream() {
+		public void write(int b) {}
+
+		public void write(byte[] b, int off, int len) {}
+	};
+
+	@Param({ "100" })
+	int rows;
+
+	private Gson gson;
+	private Gson adapterGson;
+	private JsonCodec codec;
+	private URI dbURI;
+	private BenchDoc doc;
+	private byte[] view;
+	private String changeRow;
+
+	@Setup
+	public void setUp() throws Exception {
+		gson = CouchDbClientBase.initGson(new GsonBuilder());
+		codec = new GsonCodec(gson);
+		adapterGson = CouchDbClientBase.initGson(new GsonBuilder().registerTypeAdapter(BenchDoc.class, new BenchDoc.Adapter()));
+		dbURI = URI.create("http://127.0.0.1:5984/bench/");
+		doc = new BenchDoc(1);
+		doc.setId("doc-1");
+		final CannedCouchDb canned = new CannedCouchDb(rows);
+		view = canned.view;
+		changeRow = new String(canned.changes, CannedCouchDb.UTF_8).split("\n")[0];
+		canned.stop();
+	}
+
+	@Benchmark
+	public URI uriBuilderBuild() {
+		return URIBuilder.buildUri(dbURI).path("_design/bench/_view/").path("by_id")
+				.query("startkey", "\"doc-1\"").query("limit", 100).query("include_docs", true).build();
+	}
+
+	/**
+	 * The serialization done by <code>CouchDbClientBase.put()</code> for types without a
+	 * {@link DocumentAccessor}: a tree, then the request body.
+	 */
+	@Benchmark
+	public void putSerializationTree() throws IOException {
+		final JsonObject json = gson.toJsonTree(doc).getAsJsonObject();
+		CouchDbUtil.getAsString(json, "_id");
+		CouchDbUtil.getAsString(json, "_rev");
+		new JsonEntity(codec, json).writeTo(NULL_OUTPUT);
+	}
+
+	/**
+	 * The serialization done by <code>CouchDbClientBase.put()</code> for {@link Document}s:
+	 * straight to the request body.
+	 */
+	@Benchmark
+	public void putSerialization() throws IOException {
+		doc.getId();
+		doc.getRevision();
+		new JsonEntity(codec, doc).writeTo(NULL_OUTPUT);
+	}
+
+	@Benchmark
+	public ViewResult<String, Integer, BenchDoc> viewParsing() {
+		final View v = new View(gson, dbURI, "bench/by_id").includeDocs(true);
+		return v.queryView(new ByteArrayInputStream(view), String.class, Integer.class, BenchDoc.class);
+	}
+
+	/**
+	 * View parsing with a registered {@link DocumentTypeAdapter} in place of reflection.
+	 */
+	@Benchmark
+	public ViewResult<String, Integer, BenchDoc> viewParsingAdapter() {
+		final View v = new View(adapterGson, dbURI, "bench/by_id").includeDocs(true);
+		return v.queryView(new ByteArrayInputStream(view), String.class, Integer.class, BenchDoc.class);
+	}
+
+	@Benchmark
+	public Row changesRowParsing() {
+		return gson.fromJson(changeRow, Row.class);
+	}
+}
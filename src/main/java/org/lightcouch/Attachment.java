@@ -19,6 +19,8 @@ import com.google.gson.annotations.SerializedName;
 
 /**
  * Represents an in-line document attachment. 
+ * <p>In-line data is held in memory as base64 text, large attachments are better saved with 
+ * {@link CouchDbClientBase#saveAttachment(java.io.File, String, String, String, String)}.
  * @see Document#addAttachment(String, Attachment)
  * @since 0.0.4
  * @author Ahmed Yehia
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Receives the attachments of a document read in a single <tt>multipart/related</tt> response.
+ * @see CouchDbClientBase#findWithAttachments(Class, String, AttachmentHandler)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public interface AttachmentHandler {
+
+	/**
+	 * Called for each attachment, in the order of the document <code>_attachments</code>.
+	 * <p>The stream ends with the attachment, any bytes left unread are skipped.
+	 * @param name The attachment name.
+	 * @param contentType The attachment "Content-Type".
+	 * @param in The attachment data.
+	 * @throws IOException To abort reading the response.
+	 */
+	void onAttachment(String name, String contentType, InputStream in) throws IOException;
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.Iterator;
+
+import org.apache.commons.codec.Charsets;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A <tt>_bulk_docs</tt> request body that serializes the documents straight to the connection,
+ * one document at a time.
+ * <p>The body is sent with chunked transfer encoding, its size need not be known up-front.
+ * @see CouchDbClientBase#bulk(Iterable, boolean)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+class BulkDocsEntity extends AbstractHttpEntity {
+
+	private final Gson gson;
+	private final Iterable<?> iterable;
+	private Iterator<?> iterator;
+	private final boolean newEdits;
+
+	/**
+	 * A repeatable entity, the documents are iterated each time the entity is written.
+	 */
+	BulkDocsEntity(Gson gson, Iterable<?> documents, boolean newEdits) {
+		this.gson = gson;
+		this.iterable = documents;
+		this.newEdits = newEdits;
+		setContentType("application/json");
+		setChunked(true);
+	}
+
+	/**
+	 * A non-repeatable entity, the documents can be written only once.
+	 */
+	BulkDocsEntity(Gson gson, Iterator<?> documents, boolean newEdits) {
+		this.gson = gson;
+		this.iterable = null;
+		this.iterator = documents;
+		this.newEdits = newEdits;
+		setContentType("application/json");
+		setChunked(true);
+	}
+
+	public boolean isRepeatable() {
+		return iterable != null;
+	}
+
+	public long getContentLength() {
+		return -1;
+	}
+
+	public boolean isStreaming() {
+		return false;
+	}
+
+	/**
+	 * Not supported, the body is produced by {@link #writeTo(OutputStream)}.
+	 */
+	public InputStream getContent() {
+		throw new UnsupportedOperationException("Streamed entity, use writeTo(OutputStream)");
+	}
+
+	public void writeTo(OutputStream outstream) throws IOException {
+		final Iterator<?> documents;
+		if(iterable != null) {
+			documents = iterable.iterator();
+		} else if(iterator != null) {
+			documents = iterator;
+			iterator = null;
+		} else {
+			throw new IllegalStateException("Bulk documents have already been written.");
+		}
+		final JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(outstream, Charsets.UTF_8)));
+		writer.beginObject();
+		writer.name("new_edits").value(newEdits);
+		writer.name("docs").beginArray();
+		while (documents.hasNext()) {
+			final Object document = documents.next();
+			if(document == null) {
+				writer.nullValue();
+			} else {
+				gson.toJson(document, document.getClass(), writer);
+			}
+		}
+		writer.endArray();
+		writer.endObject();
+		writer.flush(); // the connection stream is closed by the caller
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import static org.lightcouch.CouchDbUtil.assertNotEmpty;
+import static org.lightcouch.CouchDbUtil.assertNull;
+import static org.lightcouch.CouchDbUtil.getAsString;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.concurrent.BasicFuture;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Coalesces individual document writes into <tt>_bulk_docs</tt> requests.
+ * <p>Writes submitted from any number of threads are buffered and sent by a single background
+ * thread, in batches of up to {@link #batchSize(int) batchSize} documents or whenever the
+ * {@link #flushInterval(long) flushInterval} elapses since the first buffered write. Each write
+ * completes its own {@link Future} with its entry of the bulk response, failing with
+ * {@link DocumentConflictException} or {@link CouchDbException} when the document is rejected.
+ * <p>Once {@link #maxPending(int) maxPending} writes are buffered, submitting threads block
+ * until the buffer drains.
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * BulkWriter writer = dbClient.bulkWriter()
+ * 	.batchSize(500)
+ * 	.flushInterval(50)
+ * 	.maxPending(10000);
+ *
+ * Future&lt;Response&gt; response = writer.save(foo);
+ * String rev = response.get().getRev();
+ *
+ * writer.close(); // sends any buffered writes
+ * </pre>
+ * @see CouchDbClientBase#bulkWriter()
+ * @see CouchDbClientBase#bulk(List, boolean)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class BulkWriter implements Closeable {
+	private static final Log log = LogFactory.getLog(BulkWriter.class);
+	
+	/** Queued by {@link #close()}, behind the last write. */
+	private static final Entry CLOSE = new Entry(null);
+
+	private int batchSize = 100;
+	private long flushInterval = 10;
+	private int maxPending = 10000;
+
+	private CouchDbClientBase dbc;
+	private BlockingQueue<Entry> queue;
+	private Thread worker;
+	private volatile boolean closed;
+
+	BulkWriter(CouchDbClientBase dbc) {
+		this.dbc = dbc;
+	}
+
+	// Options
+
+	/**
+	 * @param batchSize The maximum number of documents per <tt>_bulk_docs</tt> request, defaults to 100.
+	 * @return {@link BulkWriter}
+	 */
+	public BulkWriter batchSize(int batchSize) {
+		assertNotStarted();
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * @param flushInterval The time in milliseconds to wait for a batch to fill up,
+	 * counted from the first buffered write, defaults to 10.
+	 * @return {@link BulkWriter}
+	 */
+	public BulkWriter flushInterval(long flushInterval) {
+		assertNotStarted();
+		this.flushInterval = flushInterval;
+		return this;
+	}
+
+	/**
+	 * @param maxPending The maximum number of buffered writes before submitting threads block, defaults to 10000.
+	 * @return {@link BulkWriter}
+	 */
+	public BulkWriter maxPending(int maxPending) {
+		assertNotStarted();
+		this.maxPending = maxPending;
+		return this;
+	}
+
+	// Writes
+
+	/**
+	 * Saves an object in the database as part of the next batch.
+	 * @param object The object to save
+	 * @return A {@link Future} of the {@link Response}
+	 * @see CouchDbClientBase#save(Object)
+	 */
+	public Future<Response> save(Object object) {
+		assertNotEmpty(object, "object");
+		final JsonObject json = dbc.getGson().toJsonTree(object).getAsJsonObject();
+		assertNull(getAsString(json, "_rev"), "rev");
+		return submit(json);
+	}
+
+	/**
+	 * Updates an object in the database as part of the next batch, the object must have
+	 * the correct <code>_id</code> and <code>_rev</code> values.
+	 * @param object The object to update
+	 * @return A {@link Future} of the {@link Response}
+	 * @see CouchDbClientBase#update(Object)
+	 */
+	public Future<Response> update(Object object) {
+		assertNotEmpty(object, "object");
+		final JsonObject json = dbc.getGson().toJsonTree(object).getAsJsonObject();
+		assertNotEmpty(getAsString(json, "_id"), "id");
+		assertNotEmpty(getAsString(json, "_rev"), "rev");
+		return submit(json);
+	}
+
+	/**
+	 * Removes a document from the database as part of the next batch, the object must have
+	 * the correct <code>_id</code> and <code>_rev</code> values.
+	 * @param object The document to remove as object.
+	 * @return A {@link Future} of the {@link Response}
+	 * @see CouchDbClientBase#remove(Object)
+	 */
+	public Future<Response> remove(Object object) {
+		assertNotEmpty(object, "object");
+		final JsonObject json = dbc.getGson().toJsonTree(object).getAsJsonObject();
+		return remove(getAsString(json, "_id"), getAsString(json, "_rev"));
+	}
+
+	/**
+	 * Removes a document from the database as part of the next batch.
+	 * @param id The document _id field.
+	 * @param rev The document _rev field.
+	 * @return A {@link Future} of the {@link Response}
+	 * @see CouchDbClientBase#remove(String, String)
+	 */
+	public Future<Response> remove(String id, String rev) {
+		assertNotEmpty(id, "id");
+		assertNotEmpty(rev, "rev");
+		final JsonObject json = new JsonObject();
+		json.addProperty("_id", id);
+		json.addProperty("_rev", rev);
+		json.addProperty("_deleted", true);
+		return submit(json);
+	}
+
+	/**
+	 * Sends any buffered writes and stops the background thread, blocking until done.
+	 * <p>Further writes are rejected with {@link IllegalStateException}.
+	 */
+	public void close() {
+		final Thread t;
+		final boolean closing;
+		synchronized (this) {
+			closing = !closed;
+			closed = true;
+			t = worker;
+		}
+		if(t != null) {
+			try {
+				if(closing) {
+					queue.put(CLOSE);
+				}
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	// Helpers
+
+	private Future<Response> submit(JsonObject json) {
+		final Entry entry = new Entry(json);
+		try {
+			queue().put(entry);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CouchDbException("Interrupted while waiting to buffer a write.", e);
+		}
+		if(closed && queue.remove(entry)) { // lost a race with close()
+			throw new IllegalStateException("BulkWriter is closed.");
+		}
+		return entry.future;
+	}
+
+	private synchronized BlockingQueue<Entry> queue() {
+		if(closed) {
+			throw new IllegalStateException("BulkWriter is closed.");
+		}
+		if(worker == null) {
+			queue = new ArrayBlockingQueue<Entry>(maxPending);
+			worker = new Thread(new Runnable() {
+				public void run() {
+					writeLoop();
+				}
+			}, "lightcouch-bulk-writer");
+			worker.setDaemon(true);
+			worker.start();
+		}
+		return queue;
+	}
+
+	private synchronized void assertNotStarted() {
+		if(worker != null) {
+			throw new IllegalStateException("BulkWriter options must be set before the first write.");
+		}
+	}
+
+	/**
+	 * Takes batches off the queue until {@link #CLOSE} is taken, blocking while idle.
+	 */
+	private void writeLoop() {
+		final List<Entry> batch = new ArrayList<Entry>(batchSize);
+		boolean closing = false;
+		while (!closing) {
+			try {
+				Entry next = queue.take();
+				final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushInterval);
+				while (next != null && next != CLOSE) {
+					batch.add(next);
+					if(batch.size() == batchSize) {
+						break;
+					}
+					final long remaining = deadline - System.nanoTime();
+					next = closed ? queue.poll() : queue.poll(remaining, TimeUnit.NANOSECONDS);
+				}
+				closing = next == CLOSE;
+			} catch (InterruptedException e) {
+				// not expected, close() queues CLOSE instead
+			}
+			if(!batch.isEmpty()) {
+				write(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Sends a batch as a single <tt>_bulk_docs</tt> request, then completes the futures in order.
+	 */
+	private void write(List<Entry> batch) {
+		final List<JsonObject> docs = new ArrayList<JsonObject>(batch.size());
+		for (Entry entry : batch) {
+			docs.add(entry.json);
+		}
+		List<Response> responses;
+		try {
+			responses = dbc.bulk(docs, true);
+		} catch (RuntimeException e) {
+			log.error("Error writing bulk documents.", e);
+			for (Entry entry : batch) {
+				entry.future.failed(e);
+			}
+			return;
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			final BasicFuture<Response> future = batch.get(i).future;
+			if(i >= responses.size()) {
+				future.failed(new CouchDbException("Missing bulk response entry."));
+				continue;
+			}
+			final Response response = responses.get(i);
+			if(response.getException() == null) {
+				future.completed(response);
+			} else {
+				future.failed(response.getException());
+			}
+		}
+	}
+
+	/**
+	 * A buffered write.
+	 */
+	private static class Entry {
+		final JsonObject json;
+		final BasicFuture<Response> future = new BasicFuture<Response>(null);
+
+		Entry(JsonObject json) {
+			this.json = json;
+		}
+	}
+}
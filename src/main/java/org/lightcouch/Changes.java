@@ -17,15 +17,23 @@
 package org.lightcouch;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URI;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Executor;
 
 import org.apache.commons.codec.Charsets;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.http.client.methods.HttpGet;
 import org.lightcouch.ChangesResult.Row;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 
 /**
  * <p>Contains the Change Notifications API, supports <i>normal</i> and <i>continuous</i> feed Changes. 
@@ -48,6 +56,7 @@ import com.google.gson.Gson;
  * Changes changes = dbClient.changes()
  *	.includeDocs(true) 
  *	.heartBeat(30000)
+ *	.reconnect(1000, 60000) // optional, survives dropped connections
  *	.continuousChanges(); 
  * 
  * while (changes.hasNext()) { 
@@ -56,49 +65,126 @@ import com.google.gson.Gson;
  *  JsonObject doc = feed.getDoc();
  *	// changes.stop(); // stop continuous feed
  * }
+ *
+ * // feed type continuous, push-style
+ * ChangesSubscription subscription = dbClient.changes()
+ *	.includeDocs(true)
+ *	.subscribe(listener, executor);
  * </pre>
+ * <p>When a heart beat is set, a continuous feed that is read from, yet receives neither a change 
+ * nor a heart beat for twice that period, is considered stalled and its connection is aborted. 
+ * Time spent by the consumer between reads is not counted.
  * @see ChangesResult
  * @since 0.0.2
  * @author Ahmed Yehia
  */
 public class Changes {
+	private static final Log log = LogFactory.getLog(Changes.class);
+	
+	private static Timer watchdog;
 	
 	private BufferedReader reader;
-	private HttpGet httpGet;
+	private volatile HttpGet httpGet;
 	private Row nextRow;
-	private boolean stop;
+	private volatile boolean stop;
+	private volatile long readStart; // 0 unless blocked reading the stream
+	private TimerTask watchdogTask;
+	
+	private volatile String since;
+	private long heartBeat;
+	private long minReconnectDelay = -1;
+	private long maxReconnectDelay;
+	private long reconnectDelay;
 	
 	private CouchDbClientBase dbc;
 	private Gson gson;
-	private URIBuilder uriBuilder;
+	private Params params = new Params();
 	
 	Changes(CouchDbClientBase dbc) {
 		this.dbc = dbc;
 		this.gson = dbc.getGson();
-		this.uriBuilder = URIBuilder.buildUri(dbc.getDBUri()).path("_changes");
 	}
 
 	/**
 	 * Requests Change notifications of feed type continuous.
 	 * <p>Feed notifications are accessed in an <i>iterator</i> style.
+	 * <p>A feed that was {@link #stop() stopped}, even before this call, is not opened.
 	 * @return {@link Changes}
+	 * @throws CouchDbException If the feed could not be opened, unless reconnecting is enabled.
+	 * @see #reconnect(long, long)
 	 */
 	public Changes continuousChanges() {
-		final URI uri = uriBuilder.query("feed", "continuous").build();
-		httpGet = new HttpGet(uri);
-		final InputStream in = dbc.get(httpGet);
-		final InputStreamReader is = new InputStreamReader(in, Charsets.UTF_8);
-		setReader(new BufferedReader(is));
+		reconnectDelay = minReconnectDelay;
+		try {
+			open();
+		} catch (CouchDbException e) {
+			if(stop) {
+				return this;
+			}
+			if(!isReconnecting()) {
+				throw e;
+			}
+			log.warn("Error opening continuous changes feed, will reconnect.", e);
+		}
 		return this;
 	}
 
 	/**
 	 * Checks whether a feed is available in the continuous stream, blocking 
 	 * until a feed is received. 
+	 * <p>If reconnecting is enabled, a dropped connection is reopened from 
+	 * the {@link #getLastSeq() last seq}, and this method keeps blocking meanwhile.
 	 * @return true If a feed is available
 	 */
 	public boolean hasNext() { 
-		return readNextRow();
+		while (true) {
+			try {
+				if(reader == null && !stop && isReconnecting()) {
+					open();
+				}
+				return readNextRow();
+			} catch (CouchDbException e) {
+				if(!isReconnecting() || stop) {
+					throw e;
+				}
+				log.warn("Continuous changes feed dropped, reconnecting in " + reconnectDelay + " ms from seq: " + since, e);
+				final CouchDbMetrics metrics = dbc.getMetrics();
+				if(metrics != null) {
+					metrics.retried("changes");
+				}
+				if(!awaitReconnect()) {
+					return false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Requests Change notifications of feed type continuous, pushing each row to a listener.
+	 * <p>Rows are read on a dedicated thread and handled on the executor, with up to 
+	 * 1000 rows pending.
+	 * @param listener The listener to receive the rows.
+	 * @param executor The executor to call the listener on.
+	 * @return {@link ChangesSubscription}
+	 * @see #subscribe(ChangesListener, Executor, int)
+	 */
+	public ChangesSubscription subscribe(ChangesListener listener, Executor executor) {
+		return subscribe(listener, executor, 1000);
+	}
+
+	/**
+	 * Requests Change notifications of feed type continuous, pushing each row to a listener.
+	 * <p>Rows are read on a dedicated thread and handled on the executor. Rows of the same 
+	 * document are handled one at a time, in feed order.
+	 * @param listener The listener to receive the rows.
+	 * @param executor The executor to call the listener on.
+	 * @param maxPending The maximum number of rows awaiting the listener, before reading pauses.
+	 * @return {@link ChangesSubscription}
+	 */
+	public ChangesSubscription subscribe(ChangesListener listener, Executor executor, int maxPending) {
+		final ChangesSubscription subscription = new ChangesSubscription(this, listener, executor, maxPending);
+		subscription.start();
+		return subscription;
 	}
 
 	/**
@@ -110,9 +196,26 @@ public class Changes {
 
 	/**
 	 * Stops a running continuous feed.
+	 * <p>May be called from any thread, a blocked {@link #hasNext()} returns <code>false</code>.
+	 * A stopped feed stays stopped, request a new one to resume from {@link #getLastSeq()}.
 	 */
 	public void stop() {
 		stop = true;
+		final HttpGet get = httpGet;
+		if(get != null) {
+			get.abort();
+		}
+		synchronized (this) {
+			notifyAll(); // wakes up a pending reconnect
+		}
+	}
+
+	/**
+	 * @return The <code>seq</code> of the last row read from the continuous feed, 
+	 * or the <code>since</code> value if no row was read yet.
+	 */
+	public String getLastSeq() {
+		return since;
 	}
 
 	/**
@@ -120,69 +223,207 @@ public class Changes {
 	 * @return {@link ChangesResult}
 	 */
 	public ChangesResult getChanges() {
-		final URI uri = uriBuilder.query("feed", "normal").build();
+		final URI uri = buildUri("normal");
 		return dbc.get(uri, ChangesResult.class);
 	}
 
+	/**
+	 * Requests Change notifications of feed type normal, returning the rows lazily 
+	 * as they are read from the response stream.
+	 * <p>The iterator should be closed if not read to the end, as to avoid connection leaks.
+	 * @return A {@link StreamingIterator} over the feed rows.
+	 * @see #getChanges()
+	 */
+	public StreamingIterator<Row> changesIterator() {
+		final URI uri = buildUri("normal");
+		return new StreamingIterator<Row>(dbc.get(uri)) {
+			@Override
+			void readHeader(JsonReader reader) throws IOException {
+				reader.beginObject();
+				if(!seekField(reader, "results")) {
+					throw new CouchDbException("Invalid changes feed, no results found.");
+				}
+				reader.beginArray();
+			}
+			
+			@Override
+			Row readEntry(JsonReader reader) throws IOException {
+				return gson.fromJson(reader, Row.class);
+			}
+		};
+	}
+
 	// Query Params
 	
 	public Changes since(String since) {
-		uriBuilder.query("since", since);
+		this.since = since;
 		return this;
 	}
 	
 	public Changes limit(int limit) {
-		uriBuilder.query("limit", limit);
+		params.addParam("limit", String.valueOf(limit));
 		return this;
 	}
 	
 	public Changes heartBeat(long heartBeat) {
-		uriBuilder.query("heartbeat", heartBeat);
+		this.heartBeat = heartBeat;
+		params.addParam("heartbeat", String.valueOf(heartBeat));
 		return this;
 	}
 	
 	public Changes timeout(long timeout) {
-		uriBuilder.query("timeout", timeout);
+		params.addParam("timeout", String.valueOf(timeout));
 		return this;
 	}
 
 	public Changes filter(String filter) {
-		uriBuilder.query("filter", filter);
+		params.addParam("filter", filter);
 		return this;
 	}
 	
 	public Changes includeDocs(boolean includeDocs) {
-		uriBuilder.query("include_docs", includeDocs);
+		params.addParam("include_docs", String.valueOf(includeDocs));
 		return this;
 	}
 	
 	public Changes style(String style) {
-		uriBuilder.query("style", style);
+		params.addParam("style", style);
+		return this;
+	}
+	
+	/**
+	 * Reconnects a dropped continuous feed, resuming from the last seq read.
+	 * <p>The delay between attempts starts at <code>minDelay</code>, doubling up to 
+	 * <code>maxDelay</code>; it is reset once a connection succeeds.
+	 * @param minDelay The delay in milliseconds before the first reconnect attempt.
+	 * @param maxDelay The maximum delay in milliseconds between reconnect attempts.
+	 * @return {@link Changes}
+	 */
+	public Changes reconnect(long minDelay, long maxDelay) {
+		if(minDelay < 0 || maxDelay < minDelay) {
+			throw new IllegalArgumentException("Invalid reconnect delays.");
+		}
+		this.minReconnectDelay = minDelay;
+		this.maxReconnectDelay = maxDelay;
 		return this;
 	}
 	
 	// Helper
 
+	private URI buildUri(String feed) {
+		return URIBuilder.buildUri(dbc.getDBUri()).path("_changes")
+				.query(params).query("since", since).query("feed", feed).build();
+	}
+
+	private boolean isReconnecting() {
+		return minReconnectDelay >= 0;
+	}
+
+	/**
+	 * Opens the continuous feed from the current seq.
+	 */
+	private void open() {
+		final HttpGet get = new HttpGet(buildUri("continuous"));
+		httpGet = get;
+		if(stop) { // lost a race with stop()
+			return;
+		}
+		final InputStream in = dbc.get(get);
+		if(stop) { // stopped while connecting
+			get.abort();
+			CouchDbUtil.close(in);
+			return;
+		}
+		setReader(new BufferedReader(new InputStreamReader(in, Charsets.UTF_8)));
+		if(heartBeat > 0) {
+			watch(get);
+		}
+	}
+
+	/**
+	 * Aborts the connection once a read is blocked, receiving neither a row nor a heart beat, 
+	 * for twice the heart beat period.
+	 */
+	private void watch(final HttpGet get) {
+		watchdogTask = new TimerTask() {
+			public void run() {
+				final long started = readStart;
+				if(started != 0 && System.currentTimeMillis() - started > 2 * heartBeat) {
+					log.warn("Continuous changes feed stalled, aborting connection.");
+					cancel();
+					get.abort();
+				}
+			}
+		};
+		synchronized (Changes.class) {
+			if(watchdog == null) {
+				watchdog = new Timer("lightcouch-changes-watchdog", true);
+			}
+			watchdog.schedule(watchdogTask, heartBeat, heartBeat);
+		}
+	}
+
+	/**
+	 * Waits for the current reconnect delay, then doubles it.
+	 * @return false If stopped meanwhile.
+	 */
+	private synchronized boolean awaitReconnect() {
+		try {
+			if(!stop && reconnectDelay > 0) {
+				wait(reconnectDelay);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			stop = true;
+		}
+		reconnectDelay = Math.min(Math.max(reconnectDelay * 2, 1), maxReconnectDelay);
+		return !stop;
+	}
+
 	/**
 	 * Reads and sets the next feed in the stream.
+	 * <p>Blank lines are heart beats. A dropped connection, without a 
+	 * terminating <code>last_seq</code> line, is an error.
 	 */
 	private boolean readNextRow() {
+		if(getReader() == null) {
+			return false;
+		}
 		boolean hasNext = false;
 		try {
+			String row = null;
+			while (!stop) {
+				readStart = System.currentTimeMillis();
+				try {
+					row = getReader().readLine();
+				} finally {
+					readStart = 0;
+				}
+				if(row == null) {
+					throw new CouchDbException("Continuous stream ended unexpectedly.");
+				}
+				if(row.length() != 0) {
+					break;
+				}
+			}
 			if(!stop) {
-				String row = ""; 
-				do {
-					row = getReader().readLine(); 
-				} while(row.length() == 0);
-				
-				if(!row.startsWith("{\"last_seq\":")) { 
-					setNextRow(gson.fromJson(row, Row.class));
+				reconnectDelay = minReconnectDelay;
+				if(row.startsWith("{\"last_seq\":")) {
+					since = CouchDbUtil.getAsString(gson.fromJson(row, JsonObject.class), "last_seq");
+					stop = true; // the feed has ended
+				} else {
+					final Row next = gson.fromJson(row, Row.class);
+					since = next.getSeq();
+					setNextRow(next);
 					hasNext = true;
-				} 
-			} 
+				}
+			}
 		} catch (Exception e) {
 			terminate();
-			throw new CouchDbException("Error reading continuous stream.", e);
+			if(!stop) {
+				throw (e instanceof CouchDbException) ? (CouchDbException) e 
+						: new CouchDbException("Error reading continuous stream.", e);
+			}
 		} 
 		if(!hasNext) 
 			terminate();
@@ -206,7 +447,16 @@ public class Changes {
 	}
 	
 	private void terminate() {
-		httpGet.abort();
-		CouchDbUtil.close(getReader());
+		if(watchdogTask != null) {
+			watchdogTask.cancel();
+			watchdogTask = null;
+		}
+		if(httpGet != null) {
+			httpGet.abort();
+		}
+		if(getReader() != null) {
+			CouchDbUtil.close(getReader());
+			setReader(null);
+		}
 	}
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import org.lightcouch.ChangesResult.Row;
+
+/**
+ * Receives the rows of a continuous changes feed.
+ * @see Changes#subscribe(ChangesListener, java.util.concurrent.Executor)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public interface ChangesListener {
+
+	/**
+	 * Called on an executor thread for each row. Rows of the same document are 
+	 * delivered one at a time, in feed order.
+	 * @param row The feed row.
+	 */
+	void onChange(Row row);
+
+	/**
+	 * Called on the reader thread when the feed fails, no more rows are delivered afterwards.
+	 * @param e The failure cause.
+	 */
+	void onError(CouchDbException e);
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.lightcouch.ChangesResult.Row;
+
+/**
+ * A running push-style consumer of a continuous changes feed.
+ * <p>A single reader thread reads the feed, handing each row to the {@link ChangesListener}
+ * on the given {@link Executor}. Rows of the same document are delivered one at a time, in
+ * feed order, while rows of different documents may be handled concurrently.
+ * <p>At most <code>maxPending</code> rows are dispatched but not yet handled; beyond that the
+ * reader thread waits for the handlers to catch up, leaving further rows on the connection. 
+ * Such a wait does not count towards the heart beat timeout of the feed.
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * ChangesSubscription subscription = dbClient.changes()
+ * 	.includeDocs(true)
+ * 	.heartBeat(30000)
+ * 	.reconnect(1000, 60000)
+ * 	.subscribe(listener, executor);
+ *
+ * subscription.close(); // stops reading the feed
+ * </pre>
+ * @see Changes#subscribe(ChangesListener, Executor, int)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class ChangesSubscription implements Closeable {
+	private static final Log log = LogFactory.getLog(ChangesSubscription.class);
+	private static final long CLOSE_WAIT = 500;
+
+	private final Changes changes;
+	private final ChangesListener listener;
+	private final Executor executor;
+	private final Semaphore pending;
+	private final Map<String, LinkedList<Row>> lanes = new HashMap<String, LinkedList<Row>>();
+	private final Thread reader;
+	private volatile boolean closed;
+
+	ChangesSubscription(Changes changes, ChangesListener listener, Executor executor, int maxPending) {
+		CouchDbUtil.assertNotEmpty(listener, "listener");
+		CouchDbUtil.assertNotEmpty(executor, "executor");
+		if(maxPending <= 0) {
+			throw new IllegalArgumentException("maxPending should be positive.");
+		}
+		this.changes = changes;
+		this.listener = listener;
+		this.executor = executor;
+		this.pending = new Semaphore(maxPending);
+		this.reader = new Thread(new Runnable() {
+			public void run() {
+				read();
+			}
+		}, "lightcouch-changes-reader");
+		reader.setDaemon(true);
+	}
+
+	void start() {
+		reader.start();
+	}
+
+	/**
+	 * Stops reading the feed, blocking until the reader thread exits, for up to 5 seconds.
+	 * <p>Rows already dispatched are still handled, though the reader does not wait for them.
+	 */
+	public void close() {
+		closed = true;
+		changes.stop();
+		reader.interrupt(); // if waiting for the handlers to catch up
+		if(Thread.currentThread() == reader) {
+			return;
+		}
+		try {
+			for (int i = 0; i < 10 && reader.isAlive(); i++) {
+				reader.join(CLOSE_WAIT);
+				changes.stop(); // aborts a connection the reader may still be blocked on
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if(reader.isAlive()) {
+			log.warn("Changes reader did not exit on close, leaving it to the connection timeout.");
+		}
+	}
+
+	/**
+	 * @return The number of rows dispatched but not yet handled.
+	 */
+	public int getPendingCount() {
+		synchronized (lanes) {
+			int count = 0;
+			for (LinkedList<Row> lane : lanes.values()) {
+				count += lane.size();
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * @return The <code>seq</code> of the last row read from the feed.
+	 * @see Changes#getLastSeq()
+	 */
+	public String getLastSeq() {
+		return changes.getLastSeq();
+	}
+
+	// Helpers
+
+	private void read() {
+		try {
+			changes.continuousChanges();
+			while (changes.hasNext()) {
+				pending.acquire();
+				dispatch(changes.next());
+			}
+		} catch (CouchDbException e) {
+			if(!closed) {
+				listener.onError(e);
+			}
+		} catch (InterruptedException e) {
+			changes.stop();
+		}
+	}
+
+	/**
+	 * Queues a row behind the rows of the same document, scheduling a handler if none is running.
+	 */
+	private void dispatch(Row row) {
+		final String id = row.getId() != null ? row.getId() : "";
+		synchronized (lanes) {
+			LinkedList<Row> lane = lanes.get(id);
+			if(lane != null) {
+				lane.add(row);
+				return;
+			}
+			lane = new LinkedList<Row>();
+			lane.add(row);
+			lanes.put(id, lane);
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					handle(id);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			synchronized (lanes) {
+				pending.release(lanes.remove(id).size());
+			}
+			log.error("Changes listener rejected by executor, dropped changes of: " + id, e);
+		}
+	}
+
+	/**
+	 * Hands the queued rows of a document to the listener, until none are left.
+	 */
+	private void handle(String id) {
+		while (true) {
+			final Row row;
+			synchronized (lanes) {
+				final LinkedList<Row> lane = lanes.get(id);
+				if(lane.isEmpty()) {
+					lanes.remove(id);
+					return;
+				}
+				row = lane.getFirst();
+			}
+			try {
+				listener.onChange(row);
+			} catch (RuntimeException e) {
+				log.error("Error handling change of: " + id, e);
+			} finally {
+				synchronized (lanes) {
+					lanes.get(id).removeFirst();
+				}
+				pending.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * A request body of known length read from a {@link FileChannel} region or a {@link ByteBuffer},
+ * written to the connection without holding a copy of it in memory.
+ * <p>File regions are sent with {@link FileChannel#transferTo(long, long, WritableByteChannel)}, 
+ * which reads them in small chunks. Neither the channel position nor the buffer position are changed, 
+ * the entity can be written again. The parts of a {@link MultipartAttachment} are written the same way.
+ * @see CouchDbClientBase#saveAttachment(FileChannel, String, String, String, String)
+ * @see CouchDbClientBase#saveAttachment(ByteBuffer, String, String, String, String)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+class ChannelEntity extends AbstractHttpEntity {
+
+	private final FileChannel channel;
+	private final long position;
+	private final ByteBuffer buffer;
+	private final long length;
+
+	ChannelEntity(FileChannel channel, long position, long count, String contentType) {
+		this.channel = channel;
+		this.position = position;
+		this.buffer = null;
+		this.length = count;
+		setContentType(contentType);
+	}
+
+	ChannelEntity(ByteBuffer buffer, String contentType) {
+		this.channel = null;
+		this.position = 0;
+		this.buffer = buffer;
+		this.length = buffer.remaining();
+		setContentType(contentType);
+	}
+
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	public long getContentLength() {
+		return length;
+	}
+
+	public boolean isStreaming() {
+		return false;
+	}
+
+	/**
+	 * Not supported, the body is produced by {@link #writeTo(OutputStream)}.
+	 */
+	public InputStream getContent() {
+		throw new UnsupportedOperationException("Streamed entity, use writeTo(OutputStream)");
+	}
+
+	public void writeTo(OutputStream outstream) throws IOException {
+		if(buffer != null) {
+			transfer(buffer, outstream);
+		} else {
+			transfer(channel, position, length, outstream);
+		}
+		outstream.flush(); // the connection stream is closed by the caller
+	}
+
+	/**
+	 * Writes the remaining bytes of a buffer, leaving its position unchanged.
+	 */
+	static void transfer(ByteBuffer buffer, OutputStream outstream) throws IOException {
+		if(buffer.hasArray()) {
+			outstream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			return;
+		}
+		final ByteBuffer source = buffer.duplicate();
+		final WritableByteChannel target = Channels.newChannel(outstream);
+		while (source.hasRemaining()) {
+			target.write(source);
+		}
+	}
+
+	/**
+	 * Writes a file region, leaving the channel position unchanged.
+	 * @throws IOException If the file ends before the region does.
+	 */
+	static void transfer(FileChannel channel, long position, long count, OutputStream outstream) throws IOException {
+		final WritableByteChannel target = Channels.newChannel(outstream);
+		final long end = position + count;
+		for (long pos = position; pos < end;) {
+			final long n = channel.transferTo(pos, end - pos, target);
+			if(n <= 0) {
+				throw new IOException(String.format("File ended after %s of %s bytes.", pos - position, count));
+			}
+			pos += n;
+		}
+	}
+}
@@ -18,22 +18,16 @@ package org.lightcouch;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.net.URLDecoder;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
 
 import javax.net.ssl.SSLContext;
 
 import org.apache.http.Consts;
 import org.apache.http.HttpHost;
-import org.apache.http.HttpRequest;
-import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpResponseInterceptor;
-import org.apache.http.RequestLine;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.AuthCache;
@@ -49,8 +43,6 @@ import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.ssl.SSLContexts;
-import org.apache.http.conn.ssl.TrustStrategy;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.BasicCredentialsProvider;
@@ -58,6 +50,7 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HttpContext;
 
@@ -87,6 +80,8 @@ import org.apache.http.protocol.HttpContext;
  *
  */
 public class CouchDbClient extends CouchDbClientBase implements Closeable {
+	
+	private PoolingHttpClientConnectionManager connectionManager; // set by createHttpClient()
 
 	/**
 	 * Constructs a new instance of this class, expects a configuration file named 
@@ -136,6 +131,7 @@ public class CouchDbClient extends CouchDbClientBase implements Closeable {
 		try {
 			Registry<ConnectionSocketFactory> registry = createRegistry(props);
 			PoolingHttpClientConnectionManager ccm = createConnectionManager(props, registry);
+			connectionManager = ccm;
 			HttpClientBuilder clientBuilder = HttpClients.custom()
 					.setConnectionManager(ccm)
 					.setDefaultConnectionConfig(ConnectionConfig.custom()
@@ -185,13 +181,7 @@ public class CouchDbClient extends CouchDbClientBase implements Closeable {
 				.<ConnectionSocketFactory> create();
 
 		if("https".equals(props.getProtocol())) {
-			SSLContext sslcontext = SSLContexts.custom()
-					.loadTrustMaterial(null, new TrustStrategy(){
-						public boolean isTrusted(X509Certificate[] chain, String authType)
-								throws CertificateException {
-							return true;
-						}
-					}).build();
+			SSLContext sslcontext = CouchDbUtil.createTrustAllSslContext();
 
 			return registry.register("https", new SSLConnectionSocketFactory(sslcontext, 
 					new NoopHostnameVerifier())).build();
@@ -205,28 +195,30 @@ public class CouchDbClient extends CouchDbClientBase implements Closeable {
 	 * @param clientBuilder
 	 */
 	private void registerInterceptors(HttpClientBuilder clientBuilder) {
-		clientBuilder.addInterceptorFirst(new HttpRequestInterceptor() {
-			public void process(final HttpRequest request,
-					final HttpContext context) throws IOException {
-				if (log.isInfoEnabled()) {
-					RequestLine req = request.getRequestLine();
-					log.info("> " + req.getMethod() + " " + URLDecoder.decode(req.getUri(), "UTF-8"));
-				}
-			}
-		});
+		clientBuilder.addInterceptorFirst(CouchDbUtil.requestLogger(log));
 		clientBuilder.addInterceptorFirst(new HttpResponseInterceptor() {
 			public void process(final HttpResponse response,
 					final HttpContext context) throws IOException {
-				if (log.isInfoEnabled()) {
-					log.info("< Status: " + response.getStatusLine().getStatusCode());
-				}
+				MeteredRequest.completed(response, context);
 				validate(response);
 			}
 		});
+		clientBuilder.addInterceptorFirst(CouchDbUtil.responseLogger(log)); // runs first
+	}
+	
+	/**
+	 * Provides the connection pool statistics, as to watch for pool starvation: 
+	 * a <code>pending</code> count above zero means requests are waiting for a connection.
+	 * @return {@link PoolStats} of leased, pending, available and max connections.
+	 * @since 0.2.1
+	 */
+	public PoolStats getConnectionPoolStats() {
+		return connectionManager.getTotalStats();
 	}
 	
 	public void shutdown() {
 		HttpClientUtils.closeQuietly(this.httpClient);
+		shutdownExecutor();
 	}
 
 	@Override
@@ -156,6 +156,7 @@ public class CouchDbClientAndroid extends CouchDbClientBase {
 	@Override
 	public void shutdown() {
 		this.httpClient.getConnectionManager().shutdown();
+		shutdownExecutor();
 	}
 
 	private SchemeRegistry createRegistry(CouchDbProperties properties) throws NoSuchAlgorithmException, KeyManagementException, KeyStoreException, CertificateException, IOException, UnrecoverableKeyException {
@@ -190,6 +191,7 @@ public class CouchDbClientAndroid extends CouchDbClientBase {
 		    	if(log.isInfoEnabled()) {
 					log.info("< Status: " + response.getStatusLine().getStatusCode());
 		    	}
+		    	MeteredRequest.completed(response, context);
 		    	validate(response);
 		    }
 		});
@@ -0,0 +1,805 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import static org.lightcouch.CouchDbUtil.assertNotEmpty;
+import static org.lightcouch.CouchDbUtil.assertNull;
+import static org.lightcouch.CouchDbUtil.generateUUID;
+import static org.lightcouch.CouchDbUtil.getAsString;
+import static org.lightcouch.CouchDbUtil.getStream;
+import static org.lightcouch.URIBuilder.buildUri;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.commons.codec.Charsets;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Presents an <i>asynchronous</i> client to CouchDB database server.
+ * <p>Requests are executed over a non-blocking HTTP transport, a small number of I/O threads
+ * serve all in-flight requests. Each operation returns immediately with a {@link Future},
+ * optionally notifying a {@link FutureCallback} on completion.
+ * <p>Responses are buffered before they are parsed; for large view results prefer the
+ * streaming APIs of the synchronous client, see {@link View#queryIterator(Class)}. Responses 
+ * are parsed, and callbacks notified, on a pool of one client thread per connection rather than 
+ * the I/O threads, as not to hold up other requests. Cancelling a {@link Future} aborts its request.
+ * <p>This client requires the optional <tt>org.apache.httpcomponents:httpasyncclient</tt> dependency.
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * CouchDbClientAsync dbClient = new CouchDbClientAsync();
+ *
+ * Future&lt;Response&gt; response = dbClient.save(foo);
+ *
+ * dbClient.find(Foo.class, "doc-id", new FutureCallback&lt;Foo&gt;() {
+ * 	public void completed(Foo foo) { }
+ * 	public void failed(Exception ex) { }
+ * 	public void cancelled() { }
+ * });
+ *
+ * View view = dbClient.view("example/foo").includeDocs(true).limit(10);
+ * List&lt;Foo&gt; list = dbClient.query(view, Foo.class).get();
+ *
+ * dbClient.shutdown();
+ * </pre>
+ *
+ * @see CouchDbClient
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class CouchDbClientAsync implements Closeable {
+
+	private static final Log log = LogFactory.getLog(CouchDbClientAsync.class);
+	private static final int MAX_QUEUED_COMPLETIONS = 1000;
+
+	private URI baseURI;
+	private URI dbURI;
+	private Gson gson;
+	private final CloseableHttpAsyncClient httpClient;
+	private final HttpHost host;
+	private PoolingNHttpClientConnectionManager connectionManager;
+	private volatile CouchDbMetrics metrics;
+	private final DocumentAccessors accessors = new DocumentAccessors();
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Constructs a new instance of this class, expects a configuration file named
+	 * <code>couchdb.properties</code> to be available in your application default classpath.
+	 */
+	public CouchDbClientAsync() {
+		this(new CouchDbConfig());
+	}
+
+	/**
+	 * Constructs a new instance of this class.
+	 * @param configFileName The configuration file name.
+	 */
+	public CouchDbClientAsync(String configFileName) {
+		this(new CouchDbConfig(configFileName));
+	}
+
+	/**
+	 * Constructs a new instance of this class.
+	 * @param dbName The database name.
+	 * @param createDbIfNotExist To create a new database if it does not already exist.
+	 * @param protocol The protocol to use (i.e http or https)
+	 * @param host The database host address
+	 * @param port The database listening port
+	 * @param username The Username credential
+	 * @param password The Password credential
+	 */
+	public CouchDbClientAsync(String dbName, boolean createDbIfNotExist,
+			String protocol, String host, int port, String username, String password) {
+		this(new CouchDbConfig(new CouchDbProperties(dbName, createDbIfNotExist, protocol, host, port, username, password)));
+	}
+
+	/**
+	 * Constructs a new instance of this class.
+	 * @param properties An object containing configuration properties.
+	 * @see CouchDbProperties
+	 */
+	public CouchDbClientAsync(CouchDbProperties properties) {
+		this(new CouchDbConfig(properties));
+	}
+
+	CouchDbClientAsync(CouchDbConfig config) {
+		final CouchDbProperties props = config.getProperties();
+		this.httpClient = createHttpClient(props);
+		this.executor = createExecutor(props);
+		this.gson = CouchDbClientBase.initGson(new GsonBuilder());
+		this.host = new HttpHost(props.getHost(), props.getPort(), props.getProtocol());
+
+		final String path = props.getPath() != null ? props.getPath() : "";
+		this.baseURI = buildUri().scheme(props.getProtocol()).host(props.getHost()).port(props.getPort()).path("/").path(path).build();
+		this.dbURI   = buildUri(baseURI).path(props.getDbName()).path("/").build();
+
+		httpClient.start();
+		if (props.isCreateDbIfNotExist()) {
+			createDbIfNotExist(props.getDbName());
+		}
+	}
+
+	// Public API
+
+	/**
+	 * Finds an Object of the specified type.
+	 * @param <T> Object type.
+	 * @param classType The class of type T.
+	 * @param id The document id.
+	 * @return A {@link Future} of an object of type T, failing with {@link NoDocumentException}
+	 * if the document is not found in the database.
+	 * @see CouchDbClientBase#find(Class, String)
+	 */
+	public <T> Future<T> find(Class<T> classType, String id) {
+		return find(classType, id, null);
+	}
+
+	/**
+	 * Finds an Object of the specified type.
+	 * @param <T> Object type.
+	 * @param classType The class of type T.
+	 * @param id The document id.
+	 * @param callback The callback to notify on completion, or {@code null}.
+	 * @return A {@link Future} of an object of type T, failing with {@link NoDocumentException}
+	 * if the document is not found in the database.
+	 */
+	public <T> Future<T> find(Class<T> classType, String id, FutureCallback<T> callback) {
+		assertNotEmpty(classType, "Class");
+		assertNotEmpty(id, "id");
+		final HttpGet get = new HttpGet(buildUri(getDBUri()).pathEncoded(id).build());
+		get.addHeader("Accept", "application/json");
+		return execute(get, new ObjectResponseHandler<T>(classType), callback);
+	}
+
+	/**
+	 * Saves an object in the database, using HTTP <tt>PUT</tt> request.
+	 * <p>If the object doesn't have an <code>_id</code> value, the code will assign a <code>UUID</code> as the document id.
+	 * @param object The object to save
+	 * @return A {@link Future} of the {@link Response}, failing with {@link DocumentConflictException}
+	 * if a conflict is detected during the save.
+	 * @see CouchDbClientBase#save(Object)
+	 */
+	public Future<Response> save(Object object) {
+		return save(object, null);
+	}
+
+	/**
+	 * Saves an object in the database, using HTTP <tt>PUT</tt> request.
+	 * @param object The object to save
+	 * @param callback The callback to notify on completion, or {@code null}.
+	 * @return A {@link Future} of the {@link Response}
+	 * @see #save(Object)
+	 */
+	public Future<Response> save(Object object, FutureCallback<Response> callback) {
+		return put(object, true, callback);
+	}
+
+	/**
+	 * Updates an object in the database, the object must have the correct <code>_id</code> and <code>_rev</code> values.
+	 * @param object The object to update
+	 * @return A {@link Future} of the {@link Response}, failing with {@link DocumentConflictException}
+	 * if a conflict is detected during the update.
+	 * @see CouchDbClientBase#update(Object)
+	 */
+	public Future<Response> update(Object object) {
+		return update(object, null);
+	}
+
+	/**
+	 * Updates an object in the database, the object must have the correct <code>_id</code> and <code>_rev</code> values.
+	 * @param object The object to update
+	 * @param callback The callback to notify on completion, or {@code null}.
+	 * @return A {@link Future} of the {@link Response}
+	 * @see #update(Object)
+	 */
+	public Future<Response> update(Object object, FutureCallback<Response> callback) {
+		return put(object, false, callback);
+	}
+
+	/**
+	 * Removes a document from the database.
+	 * <p>The object must have the correct <code>_id</code> and <code>_rev</code> values.
+	 * @param object The document to remove as object.
+	 * @return A {@link Future} of the {@link Response}, failing with {@link NoDocumentException}
+	 * if the document is not found in the database.
+	 * @see CouchDbClientBase#remove(Object)
+	 */
+	public Future<Response> remove(Object object) {
+		return remove(object, null);
+	}
+
+	/**
+	 * Removes a document from the database.
+	 * @param object The document to remove as object.
+	 * @param callback The callback to notify on completion, or {@code null}.
+	 * @return A {@link Future} of the {@link Response}
+	 * @see #remove(Object)
+	 */
+	public Future<Response> remove(Object object, FutureCallback<Response> callback) {
+		assertNotEmpty(object, "object");
+		final DocumentAccessor<Object> accessor = accessors.get(object);
+		if(accessor != null) {
+			return remove(accessor.getId(object), accessor.getRevision(object), callback);
+		}
+		JsonObject jsonObject = getGson().toJsonTree(object).getAsJsonObject();
+		final String id = getAsString(jsonObject, "_id");
+		final String rev = getAsString(jsonObject, "_rev");
+		return remove(id, rev, callback);
+	}
+
+	/**
+	 * Removes a document from the database given both a document <code>_id</code> and <code>_rev</code> values.
+	 * @param id The document _id field.
+	 * @param rev The document _rev field.
+	 * @return A {@link Future} of the {@link Response}
+	 * @see CouchDbClientBase#remove(String, String)
+	 */
+	public Future<Response> remove(String id, String rev) {
+		return remove(id, rev, null);
+	}
+
+	/**
+	 * Removes a document from the database given both a document <code>_id</code> and <code>_rev</code> values.
+	 * @param id The document _id field.
+	 * @param rev The document _rev field.
+	 * @param callback The callback to notify on completion, or {@code null}.
+	 * @return A {@link Future} of the {@link Response}
+	 */
+	public Future<Response> remove(String id, String rev, FutureCallback<Response> callback) {
+		assertNotEmpty(id, "id");
+		assertNotEmpty(rev, "rev");
+		final URI uri = buildUri(getDBUri()).pathEncoded(id).query("rev", rev).build();
+		return execute(new HttpDelete(uri), new ObjectResponseHandler<Response>(Response.class), callback);
+	}
+
+	/**
+	 * Performs bulk documents create and update request.
+	 * @param objects The {@link List} of documents objects.
+	 * @param newEdits If false, prevents the database from assigning documents new revision IDs.
+	 * @return A {@link Future} of the {@code List<Response>} containing the resulted entries.
+	 * @see CouchDbClientBase#bulk(List, boolean)
+	 */
+	public Future<List<Response>> bulk(List<?> objects, boolean newEdits) {
+		return bulk(objects, newEdits, null);
+	}
+
+	/**
+	 * Performs bulk documents create and update request.
+	 * @param objects The {@link List} of documents objects.
+	 * @param newEdits If false, prevents the database from assigning documents new revision IDs.
+	 * @param callback The callback to notify on completion, or {@code null}.
+	 * @return A {@link Future} of the {@code List<Response>} containing the resulted entries.
+	 */
+	public Future<List<Response>> bulk(List<?> objects, boolean newEdits, FutureCallback<List<Response>> callback) {
+		assertNotEmpty(objects, "objects");
+		final String newEditsVal = newEdits ? "\"new_edits\": true, " : "\"new_edits\": false, ";
+		final String json = String.format("{%s%s%s}", newEditsVal, "\"docs\": ", getGson().toJson(objects));
+		final HttpPost post = new HttpPost(buildUri(getDBUri()).path("_bulk_docs").build());
+		setEntity(post, json);
+		return execute(post, new ResponseHandler<List<Response>>() {
+			public List<Response> handleResponse(HttpResponse response) throws IOException {
+				return getGson().fromJson(new InputStreamReader(getStream(response), Charsets.UTF_8),
+						new TypeToken<List<Response>>(){}.getType());
+			}
+		}, callback);
+	}
+
+	/**
+	 * Creates a <tt>View</tt> to be executed by {@link #query(View, Class)} or
+	 * {@link #queryView(View, Class, Class, Class)}.
+	 * <p>The view query parameters are set as usual, its <tt>query</tt> methods however may not be
+	 * called directly.
+	 * @param viewId The view id.
+	 * @return {@link View}
+	 */
+	public View view(String viewId) {
+		return new View(getGson(), getDBUri(), viewId);
+	}
+
+	/**
+	 * Queries a view.
+	 * @param <T> Object type T
+	 * @param view The view created by {@link #view(String)}.
+	 * @param classOfT The class of type T
+	 * @return A {@link Future} of the result of the view query as a {@code List<T> }
+	 * @see View#query(Class)
+	 */
+	public <T> Future<List<T>> query(View view, Class<T> classOfT) {
+		return query(view, classOfT, null);
+	}
+
+	/**
+	 * Queries a view.
+	 * @param <T> Object type T
+	 * @param view The view created by {@link #view(String)}.
+	 * @param classOfT The class of type T
+	 * @param callback The callback to notify on completion, or {@code null}.
+	 * @return A {@link Future} of the result of the view query as a {@code List<T> }
+	 */
+	public <T> Future<List<T>> query(final View view, final Class<T> classOfT, FutureCallback<List<T>> callback) {
+		assertNotEmpty(view, "view");
+		return execute(createViewRequest(view), new ResponseHandler<List<T>>() {
+			public List<T> handleResponse(HttpResponse response) throws IOException {
+				final List<T> list = new ArrayList<T>();
+				final StreamingIterator<T> iterator = view.queryIterator(getStream(response), classOfT);
+				while (iterator.hasNext()) {
+					list.add(iterator.next());
+				}
+				return list;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Queries a view.
+	 * @param <K> Object type K (key)
+	 * @param <V> Object type V (value)
+	 * @param <T> The class type
+	 * @param view The view created by {@link #view(String)}.
+	 * @param classOfK The class of type K.
+	 * @param classOfV The class of type V.
+	 * @param classOfT The class of type T.
+	 * @return A {@link Future} of the View result entries.
+	 * @see View#queryView(Class, Class, Class)
+	 */
+	public <K, V, T> Future<ViewResult<K, V, T>> queryView(View view, Class<K> classOfK, Class<V> classOfV, Class<T> classOfT) {
+		return queryView(view, classOfK, classOfV, classOfT, null);
+	}
+
+	/**
+	 * Queries a view.
+	 * @param <K> Object type K (key)
+	 * @param <V> Object type V (value)
+	 * @param <T> The class type
+	 * @param view The view created by {@link #view(String)}.
+	 * @param classOfK The class of type K.
+	 * @param classOfV The class of type V.
+	 * @param classOfT The class of type T.
+	 * @param callback The callback to notify on completion, or {@code null}.
+	 * @return A {@link Future} of the View result entries.
+	 */
+	public <K, V, T> Future<ViewResult<K, V, T>> queryView(final View view, final Class<K> classOfK, final Class<V> classOfV,
+			final Class<T> classOfT, FutureCallback<ViewResult<K, V, T>> callback) {
+		assertNotEmpty(view, "view");
+		return execute(createViewRequest(view), new ResponseHandler<ViewResult<K, V, T>>() {
+			public ViewResult<K, V, T> handleResponse(HttpResponse response) throws IOException {
+				return view.queryView(getStream(response), classOfK, classOfV, classOfT);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Executes a HTTP request asynchronously.
+	 * <p>The response is validated before it is handed to the handler, error statuses fail
+	 * the returned {@link Future} with the relevant exception.
+	 * @param <T> The result type.
+	 * @param request The HTTP request to execute.
+	 * @param handler Converts the response into the result.
+	 * @param callback The callback to notify on completion, or {@code null}.
+	 * @return A {@link Future} of the result.
+	 */
+	public <T> Future<T> executeRequest(HttpUriRequest request, ResponseHandler<T> handler, FutureCallback<T> callback) {
+		return execute(request, handler, callback);
+	}
+
+	/**
+	 * Sets a {@link GsonBuilder} to create {@link Gson} instance.
+	 * @param gsonBuilder The {@link GsonBuilder}
+	 * @see CouchDbClientBase#setGsonBuilder(GsonBuilder)
+	 */
+	public void setGsonBuilder(GsonBuilder gsonBuilder) {
+		this.gson = CouchDbClientBase.initGson(gsonBuilder);
+	}
+
+	/**
+	 * @return The base URI.
+	 */
+	public URI getBaseUri() {
+		return baseURI;
+	}
+
+	/**
+	 * @return The database URI.
+	 */
+	public URI getDBUri() {
+		return dbURI;
+	}
+
+	/**
+	 * @return The Gson instance.
+	 */
+	public Gson getGson() {
+		return gson;
+	}
+
+	/**
+	 * Sets a receiver for measurements of the HTTP requests made by this client.
+	 * @param metrics The {@link CouchDbMetrics}, or {@code null} to disable measuring.
+	 * @see SimpleCouchDbMetrics
+	 */
+	public void setMetrics(CouchDbMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return The {@link CouchDbMetrics}, or {@code null} if measuring is disabled.
+	 */
+	public CouchDbMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Registers how to read the <code>_id</code> and <code>_rev</code> of objects of a type,
+	 * as to save, update and remove them without first converting them to a JSON tree.
+	 * @param type The object type, applies to its subclasses too.
+	 * @param accessor The {@link DocumentAccessor}
+	 * @see CouchDbClientBase#registerDocumentAccessor(Class, DocumentAccessor)
+	 */
+	public <T> void registerDocumentAccessor(Class<T> type, DocumentAccessor<? super T> accessor) {
+		accessors.register(type, accessor);
+	}
+
+	/**
+	 * Provides the connection pool statistics, as to watch for pool starvation.
+	 * @return {@link PoolStats} of leased, pending, available and max connections.
+	 */
+	public PoolStats getConnectionPoolStats() {
+		return connectionManager.getTotalStats();
+	}
+
+	/**
+	 * Shuts down the I/O reactor, the connection manager and the worker threads used by this client instance.
+	 */
+	public void shutdown() {
+		CouchDbUtil.close(httpClient);
+		executor.shutdown();
+	}
+
+	public void close() throws IOException {
+		shutdown();
+	}
+
+	// End - Public API
+
+	/**
+	 * Performs a HTTP PUT request, saves or updates a document.
+	 */
+	private Future<Response> put(Object object, boolean newEntity, FutureCallback<Response> callback) {
+		assertNotEmpty(object, "object");
+		final DocumentAccessor<Object> accessor = accessors.get(object);
+		final String body;
+		String id;
+		String rev;
+		if(accessor != null) { // serialized once
+			body = getGson().toJson(object);
+			id = accessor.getId(object);
+			rev = accessor.getRevision(object);
+		} else {
+			final JsonObject json = getGson().toJsonTree(object).getAsJsonObject();
+			body = json.toString();
+			id = getAsString(json, "_id");
+			rev = getAsString(json, "_rev");
+		}
+		if(newEntity) { // save
+			assertNull(rev, "rev");
+			id = (id == null) ? generateUUID() : id;
+		} else { // update
+			assertNotEmpty(id, "id");
+			assertNotEmpty(rev, "rev");
+		}
+		final HttpPut put = new HttpPut(buildUri(getDBUri()).pathEncoded(id).build());
+		setEntity(put, body);
+		return execute(put, new ObjectResponseHandler<Response>(Response.class), callback);
+	}
+
+	private HttpUriRequest createViewRequest(View view) {
+		final URI uri = view.getUri();
+		if(view.getAllDocsKeys() != null) { // bulk docs
+			final HttpPost post = new HttpPost(uri);
+			setEntity(post, view.getAllDocsKeys());
+			return post;
+		}
+		final HttpGet get = new HttpGet(uri);
+		get.addHeader("Accept", "application/json");
+		return get;
+	}
+
+	/**
+	 * Executes a request, handing its response to the worker threads as not to parse it, 
+	 * nor call the callback, on an I/O thread.
+	 */
+	private <T> Future<T> execute(final HttpUriRequest request, final ResponseHandler<T> handler, FutureCallback<T> callback) {
+		final RequestFuture<T> future = new RequestFuture<T>(callback);
+		final CouchDbMetrics metrics = this.metrics;
+		final MeteredRequest metered = metrics == null ? null : new MeteredRequest(metrics, request, dbURI);
+		future.setRequest(httpClient.execute(host, request, createContext(), new FutureCallback<HttpResponse>() {
+			public void completed(final HttpResponse response) {
+				if(metered != null) {
+					metered.completed(response);
+				}
+				dispatch(future, response, new Runnable() {
+					public void run() {
+						try {
+							CouchDbClientBase.validate(response);
+							future.completed(handler.handleResponse(response));
+						} catch (Exception e) {
+							future.failed(e);
+						} finally {
+							CouchDbUtil.close(response);
+						}
+					}
+				});
+			}
+
+			public void failed(final Exception ex) {
+				if(metered != null) {
+					metered.failed();
+				}
+				dispatch(future, null, new Runnable() {
+					public void run() {
+						future.failed(new CouchDbException("Error executing request. ", ex));
+					}
+				});
+			}
+
+			public void cancelled() {
+				dispatch(future, null, new Runnable() {
+					public void run() {
+						future.cancel();
+					}
+				});
+			}
+		}));
+		return future;
+	}
+
+	/**
+	 * Runs a completion on the worker threads, or fails the future if the client is shut down.
+	 */
+	private void dispatch(RequestFuture<?> future, HttpResponse response, Runnable completion) {
+		try {
+			executor.execute(completion);
+		} catch (RejectedExecutionException e) {
+			if(response != null) {
+				CouchDbUtil.close(response);
+			}
+			future.failed(new CouchDbException("Client is shut down. ", e));
+		}
+	}
+
+	/**
+	 * Creates the database if it does not already exist, blocking until done.
+	 */
+	private void createDbIfNotExist(String dbName) {
+		final URI uri = buildUri(getBaseUri()).path(dbName).build();
+		try {
+			try {
+				execute(new HttpGet(uri), new ObjectResponseHandler<JsonObject>(JsonObject.class), null).get();
+			} catch (ExecutionException e) {
+				if(!(e.getCause() instanceof NoDocumentException)) {
+					throw e;
+				}
+				execute(new HttpPut(uri), new ObjectResponseHandler<Response>(Response.class), null).get();
+				log.info(String.format("Created Database: '%s'", dbName));
+			}
+		} catch (ExecutionException e) {
+			shutdown();
+			throw new CouchDbException("Error creating database. ", e.getCause());
+		} catch (InterruptedException e) {
+			shutdown();
+			Thread.currentThread().interrupt();
+			throw new CouchDbException("Interrupted while creating database. ", e);
+		}
+	}
+
+	/**
+	 * @return A pool of one worker thread per connection, queuing up to {@link #MAX_QUEUED_COMPLETIONS}. 
+	 * Beyond that, completions run on the I/O thread, which holds off further responses until the 
+	 * workers catch up.
+	 */
+	private ThreadPoolExecutor createExecutor(CouchDbProperties props) {
+		final int threads = props.getMaxConnections() != 0 ? props.getMaxConnections() : 2; // pool default per route
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, 
+				new LinkedBlockingQueue<Runnable>(MAX_QUEUED_COMPLETIONS), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				final Thread thread = new Thread(r, "lightcouch-async-worker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}, new RejectedExecutionHandler() {
+			public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+				if(executor.isShutdown()) {
+					throw new RejectedExecutionException("Client is shut down.");
+				}
+				r.run();
+			}
+		});
+	}
+
+	private HttpContext createContext() {
+		AuthCache authCache = new BasicAuthCache();
+		authCache.put(host, new BasicScheme());
+		HttpContext context = new BasicHttpContext();
+		context.setAttribute(HttpClientContext.AUTH_CACHE, authCache);
+		return context;
+	}
+
+	private void setEntity(HttpEntityEnclosingRequestBase httpRequest, String json) {
+		StringEntity entity = new StringEntity(json, "UTF-8");
+		entity.setContentType("application/json");
+		httpRequest.setEntity(entity);
+	}
+
+	/**
+	 * @return {@link CloseableHttpAsyncClient} instance, not yet started.
+	 */
+	private CloseableHttpAsyncClient createHttpClient(CouchDbProperties props) {
+		try {
+			IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+					.setSoTimeout(props.getSocketTimeout())
+					.setConnectTimeout(props.getConnectionTimeout()).build();
+			PoolingNHttpClientConnectionManager ccm = new PoolingNHttpClientConnectionManager(
+					new DefaultConnectingIOReactor(ioReactorConfig), createRegistry(props));
+			connectionManager = ccm;
+			if (props.getMaxConnections() != 0) {
+				ccm.setMaxTotal(props.getMaxConnections());
+				ccm.setDefaultMaxPerRoute(props.getMaxConnections());
+			}
+			HttpAsyncClientBuilder clientBuilder = HttpAsyncClients.custom()
+					.setConnectionManager(ccm)
+					.setDefaultRequestConfig(RequestConfig.custom()
+							.setSocketTimeout(props.getSocketTimeout())
+							.setConnectTimeout(props.getConnectionTimeout()).build());
+			if (props.getProxyHost() != null)
+				clientBuilder.setProxy(new HttpHost(props.getProxyHost(), props.getProxyPort()));
+			if (props.getUsername() != null) {
+				CredentialsProvider credsProvider = new BasicCredentialsProvider();
+				credsProvider.setCredentials(new AuthScope(props.getHost(),
+						props.getPort()),
+						new UsernamePasswordCredentials(props.getUsername(),
+								props.getPassword()));
+				clientBuilder.setDefaultCredentialsProvider(credsProvider);
+				props.clearPassword();
+			}
+			registerInterceptors(clientBuilder);
+			return clientBuilder.build();
+		} catch (Exception e) {
+			throw new IllegalStateException("Error Creating HTTPClient: ", e);
+		}
+	}
+
+	private Registry<SchemeIOSessionStrategy> createRegistry(CouchDbProperties props) throws Exception {
+		RegistryBuilder<SchemeIOSessionStrategy> registry = RegistryBuilder
+				.<SchemeIOSessionStrategy> create();
+
+		if("https".equals(props.getProtocol())) {
+			SSLContext sslcontext = CouchDbUtil.createTrustAllSslContext();
+
+			return registry.register("https", new SSLIOSessionStrategy(sslcontext,
+					new NoopHostnameVerifier())).build();
+		} else {
+			return registry.register("http", NoopIOSessionStrategy.INSTANCE).build();
+		}
+	}
+
+	/**
+	 * Adds request/response interceptors for logging.
+	 */
+	private void registerInterceptors(HttpAsyncClientBuilder clientBuilder) {
+		clientBuilder.addInterceptorFirst(CouchDbUtil.requestLogger(log));
+		clientBuilder.addInterceptorFirst(CouchDbUtil.responseLogger(log));
+	}
+
+	/**
+	 * The future of an operation, aborting its request when cancelled.
+	 */
+	private static class RequestFuture<T> extends BasicFuture<T> {
+		private volatile Future<HttpResponse> request;
+
+		RequestFuture(FutureCallback<T> callback) {
+			super(callback);
+		}
+
+		void setRequest(Future<HttpResponse> request) {
+			this.request = request;
+			if(isCancelled()) { // cancelled before the request was executed
+				request.cancel(true);
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			final boolean cancelled = super.cancel(mayInterruptIfRunning);
+			final Future<HttpResponse> r = request;
+			if(cancelled && r != null) {
+				r.cancel(true);
+			}
+			return cancelled;
+		}
+	}
+
+	/**
+	 * Deserializes a JSON response into an object of the given class.
+	 */
+	private class ObjectResponseHandler<T> implements ResponseHandler<T> {
+		private final Class<T> classOfT;
+
+		ObjectResponseHandler(Class<T> classOfT) {
+			this.classOfT = classOfT;
+		}
+
+		public T handleResponse(HttpResponse response) throws IOException {
+			return getGson().fromJson(new InputStreamReader(getStream(response), Charsets.UTF_8), classOfT);
+		}
+	}
+}
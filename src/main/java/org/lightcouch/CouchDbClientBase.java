@@ -25,6 +25,8 @@ import static org.lightcouch.CouchDbUtil.getStream;
 import static org.lightcouch.CouchDbUtil.streamToString;
 import static org.lightcouch.URIBuilder.buildUri;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -32,12 +34,32 @@ import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Type;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.codec.Charsets;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
@@ -49,6 +71,7 @@ import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.protocol.HttpContext;
@@ -56,7 +79,6 @@ import org.apache.http.util.EntityUtils;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
@@ -65,7 +87,11 @@ import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 /**
  * Contains a client Public API implementation.
@@ -76,12 +102,24 @@ import com.google.gson.reflect.TypeToken;
 public abstract class CouchDbClientBase {
 
 	static final Log log = LogFactory.getLog(CouchDbClient.class);
+	
+	private static final int ATTACHMENT_BUFFER_SIZE = 64 * 1024;
+	private static final int FIND_ALL_CHUNK_SIZE = 500;
 
 	private URI baseURI;
 	private URI dbURI;
-	private Gson gson; 
+	private volatile Gson gson; 
+	private GsonBuilder gsonBuilder;
+	private volatile JsonCodec gsonCodec;
+	private volatile JsonCodec jsonCodec;
 	private CouchDbContext context;
 	private CouchDbDesign design;
+	private MangoIndexes mangoIndexes;
+	private volatile DocumentCache documentCache;
+	private volatile CouchDbMetrics metrics;
+	private final DocumentAccessors accessors = new DocumentAccessors();
+	private final int maxConnections;
+	private ExecutorService executor; // see getExecutor()
 	final HttpClient httpClient;
 	final HttpHost host;
 	
@@ -92,7 +130,9 @@ public abstract class CouchDbClientBase {
 	CouchDbClientBase(CouchDbConfig config) {
 		final CouchDbProperties props = config.getProperties();
 		this.httpClient = createHttpClient(props);
-		this.gson = initGson(new GsonBuilder());
+		this.maxConnections = props.getMaxConnections() != 0 ? props.getMaxConnections() : 2; // pool default per route
+		this.gsonBuilder = new GsonBuilder();
+		setGson(initGson(gsonBuilder));
 		this.host = new HttpHost(props.getHost(), props.getPort(), props.getProtocol());
 		
 		final String path = props.getPath() != null ? props.getPath() : "";
@@ -101,6 +141,7 @@ public abstract class CouchDbClientBase {
 		
 		this.context = new CouchDbContext(this, props); 
 		this.design = new CouchDbDesign(this);
+		this.mangoIndexes = new MangoIndexes(this);
 	}
 	
 	// Client(s) provided implementation
@@ -138,6 +179,14 @@ public abstract class CouchDbClientBase {
 		return design;
 	}
 	
+	/**
+	 * Provides access to Mango indexes.
+	 * @return {@link MangoIndexes}
+	 */
+	public MangoIndexes mangoIndexes() {
+		return mangoIndexes;
+	}
+	
 	/**
 	 * Provides access to CouchDB <tt>View</tt> APIs.
 	 * @param viewId The view id.
@@ -171,6 +220,26 @@ public abstract class CouchDbClientBase {
 		return new Changes(this);
 	}
 	
+	/**
+	 * Provides a writer that coalesces document writes into <tt>_bulk_docs</tt> requests.
+	 * <p>The writer should be closed after use to send any buffered writes.
+	 * @return {@link BulkWriter}
+	 */
+	public BulkWriter bulkWriter() {
+		return new BulkWriter(this);
+	}
+
+	/**
+	 * Provides an in-memory map of documents that follows the database changes feed.
+	 * <p>The map is loaded and starts following changes once {@link LiveDocumentMap#start()} is called.
+	 * @param <T> The document type.
+	 * @param classOfT The class of type T.
+	 * @return {@link LiveDocumentMap}
+	 */
+	public <T> LiveDocumentMap<T> liveDocumentMap(Class<T> classOfT) {
+		return new LiveDocumentMap<T>(this, classOfT);
+	}
+	
 	/**
 	 * Finds an Object of the specified type.
 	 * @param <T> Object type.
@@ -183,7 +252,11 @@ public abstract class CouchDbClientBase {
 		assertNotEmpty(classType, "Class");
 		assertNotEmpty(id, "id");
 		final URI uri = buildUri(getDBUri()).pathEncoded(id).build();
-		return get(uri, classType);
+		final DocumentCache cache = documentCache;
+		if(cache != null) {
+			return getCached(uri, id, classType, cache);
+		}
+		return getDocument(uri, classType);
 	}
 	
 	/**
@@ -199,7 +272,7 @@ public abstract class CouchDbClientBase {
 		assertNotEmpty(classType, "Class");
 		assertNotEmpty(id, "id");
 		final URI uri = buildUri(getDBUri()).pathEncoded(id).query(params).build();
-		return get(uri, classType);
+		return getDocument(uri, classType);
 	}
 	
 	/**
@@ -216,7 +289,7 @@ public abstract class CouchDbClientBase {
 		assertNotEmpty(id, "id");
 		assertNotEmpty(id, "rev");
 		final URI uri = buildUri(getDBUri()).pathEncoded(id).query("rev", rev).build();
-		return get(uri, classType);
+		return getDocument(uri, classType);
 	}
 	
 	/**
@@ -274,21 +347,174 @@ public abstract class CouchDbClientBase {
 		HttpResponse response = null;
 		try {
 			response = post(buildUri(getDBUri()).path("_find").build(), jsonQuery);
-			Reader reader = new InputStreamReader(getStream(response), Charsets.UTF_8);
-			JsonArray jsonArray = new JsonParser().parse(reader)
-					.getAsJsonObject().getAsJsonArray("docs");
-			List<T> list = new ArrayList<T>();
-			for (JsonElement jsonElem : jsonArray) {
-				JsonElement elem = jsonElem.getAsJsonObject();
-				T t = this.gson.fromJson(elem, classOfT);
-				list.add(t);
+			final JsonReader reader = new JsonReader(new InputStreamReader(getStream(response), Charsets.UTF_8));
+			final TypeAdapter<T> adapter = getGson().getAdapter(classOfT);
+			final List<T> list = new ArrayList<T>();
+			reader.beginObject();
+			if(StreamingIterator.seekField(reader, "docs")) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					list.add(adapter.read(reader));
+				}
 			}
-				return list;
+			return list;
+		} catch (IOException e) {
+			throw new CouchDbException("Error reading response.", e);
 		} finally {
 			close(response);
 		}
 	}
 	
+	/**
+	 * Finds documents by id using <tt>_all_docs</tt> with <tt>POST</tt>ed keys.
+	 * <p>Large id sets are split into chunks of {@value #FIND_ALL_CHUNK_SIZE} ids, fetched 
+	 * concurrently across the connection pool.
+	 * @param <T> The class type.
+	 * @param classType The class of type T.
+	 * @param ids The document ids.
+	 * @return {@link FindAllResult} with the documents found, and the missing and deleted ids.
+	 * @see #findAll(Class, Collection, int)
+	 */
+	public <T> FindAllResult<T> findAll(Class<T> classType, Collection<String> ids) {
+		return findAll(classType, ids, FIND_ALL_CHUNK_SIZE);
+	}
+	
+	/**
+	 * Finds documents by id using <tt>_all_docs</tt> with <tt>POST</tt>ed keys.
+	 * <p>Chunks are fetched concurrently, up to the maximum number of connections, and each 
+	 * response is parsed as it streams in. Duplicate ids are fetched once.
+	 * @param <T> The class type.
+	 * @param classType The class of type T.
+	 * @param ids The document ids.
+	 * @param chunkSize The maximum number of ids per request.
+	 * @return {@link FindAllResult} with the documents found, and the missing and deleted ids.
+	 */
+	public <T> FindAllResult<T> findAll(final Class<T> classType, Collection<String> ids, int chunkSize) {
+		assertNotEmpty(classType, "Class");
+		assertNotEmpty(ids, "ids");
+		if(chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must be positive.");
+		}
+		final List<List<String>> chunks = new ArrayList<List<String>>();
+		List<String> chunk = null;
+		for (String id : new LinkedHashSet<String>(ids)) {
+			if(chunk == null || chunk.size() == chunkSize) {
+				chunk = new ArrayList<String>(Math.min(chunkSize, ids.size()));
+				chunks.add(chunk);
+			}
+			chunk.add(id);
+		}
+		final List<Callable<FindAllResult<T>>> tasks = new ArrayList<Callable<FindAllResult<T>>>(chunks.size());
+		for (final List<String> keys : chunks) {
+			tasks.add(new Callable<FindAllResult<T>>() {
+				public FindAllResult<T> call() {
+					return findAllChunk(classType, keys);
+				}
+			});
+		}
+		final FindAllResult<T> result = new FindAllResult<T>();
+		for (FindAllResult<T> chunkResult : invokeAll(tasks)) {
+			result.add(chunkResult);
+		}
+		return result;
+	}
+	
+	private <T> FindAllResult<T> findAllChunk(Class<T> classType, List<String> keys) {
+		HttpResponse response = null;
+		try {
+			final HttpPost post = new HttpPost(buildUri(getDBUri()).path("_all_docs").query("include_docs", true).build());
+			post.setEntity(new JsonEntity(gsonCodec, Collections.singletonMap("keys", keys)));
+			response = executeRequest(post);
+			final JsonReader reader = new JsonReader(new InputStreamReader(getStream(response), Charsets.UTF_8));
+			final TypeAdapter<T> adapter = getGson().getAdapter(classType);
+			final FindAllResult<T> result = new FindAllResult<T>();
+			reader.beginObject();
+			if(StreamingIterator.seekField(reader, "rows")) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					String key = null;
+					String error = null;
+					boolean deleted = false;
+					T doc = null;
+					reader.beginObject();
+					while (reader.hasNext()) {
+						final String name = reader.nextName();
+						if("key".equals(name)) {
+							key = reader.nextString();
+						} else if("error".equals(name)) {
+							error = reader.nextString();
+						} else if("value".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+							reader.beginObject();
+							while (reader.hasNext()) {
+								if("deleted".equals(reader.nextName())) {
+									deleted = reader.nextBoolean();
+								} else {
+									reader.skipValue();
+								}
+							}
+							reader.endObject();
+						} else if("doc".equals(name) && reader.peek() != JsonToken.NULL) {
+							doc = adapter.read(reader);
+						} else {
+							reader.skipValue();
+						}
+					}
+					reader.endObject();
+					if(error != null) {
+						result.missing(key);
+					} else if(deleted) {
+						result.deleted(key);
+					} else {
+						result.found(key, doc);
+					}
+				}
+			}
+			return result;
+		} catch (IOException e) {
+			throw new CouchDbException("Error reading response.", e);
+		} finally {
+			close(response);
+		}
+	}
+	
+	/**
+	 * Finds documents using a Mango query.
+	 * <p>Use {@link MangoQuery#fields(Class)} to fetch only the fields of <code>classOfT</code>.
+	 * @param <T> The class type.
+	 * @param query The {@link MangoQuery}.
+	 * @param classOfT The class of type T.
+	 * @return The result of the query as a {@code List<T> }
+	 * @throws CouchDbException If the query failed to execute or the request is invalid.
+	 * @see #findStream(MangoQuery, Class)
+	 */
+	public <T> List<T> findDocs(MangoQuery query, Class<T> classOfT) {
+		final MangoIterator<T> iterator = findStream(query, classOfT);
+		try {
+			final List<T> list = new ArrayList<T>();
+			while (iterator.hasNext()) {
+				list.add(iterator.next());
+			}
+			return list;
+		} finally {
+			iterator.close();
+		}
+	}
+	
+	/**
+	 * Finds documents using a Mango query, following the <tt>bookmark</tt> until all matching 
+	 * documents, or the query <tt>limit</tt>, are read.
+	 * @param <T> The class type.
+	 * @param query The {@link MangoQuery}.
+	 * @param classOfT The class of type T.
+	 * @return {@link MangoIterator} over the matching documents.
+	 * @throws CouchDbException If the query failed to execute or the request is invalid.
+	 */
+	public <T> MangoIterator<T> findStream(MangoQuery query, Class<T> classOfT) {
+		assertNotEmpty(query, "query");
+		assertNotEmpty(classOfT, "Class");
+		return new MangoIterator<T>(this, query, classOfT);
+	}
+	
 	/**
 	 * Checks if a document exist in the database.
 	 * @param id The document _id field.
@@ -328,9 +554,10 @@ public abstract class CouchDbClientBase {
 		assertNotEmpty(object, "object");
 		HttpResponse response = null;
 		try { 
-			URI uri = buildUri(getDBUri()).build();
-			response = post(uri, getGson().toJson(object));
-			return getResponse(response);
+			final HttpPost post = new HttpPost(buildUri(getDBUri()).build());
+			post.setEntity(new JsonEntity(getJsonCodec(object.getClass()), object));
+			response = executeRequest(post);
+			return invalidate(getResponse(response));
 		} finally {
 			close(response);
 		}
@@ -344,8 +571,9 @@ public abstract class CouchDbClientBase {
 		assertNotEmpty(object, "object");
 		HttpResponse response = null;
 		try { 
-			URI uri = buildUri(getDBUri()).query("batch", "ok").build();
-			response = post(uri, getGson().toJson(object));
+			final HttpPost post = new HttpPost(buildUri(getDBUri()).query("batch", "ok").build());
+			post.setEntity(new JsonEntity(getJsonCodec(object.getClass()), object));
+			response = executeRequest(post);
 		} finally {
 			close(response);
 		}
@@ -370,6 +598,10 @@ public abstract class CouchDbClientBase {
 	 */
 	public Response remove(Object object) {
 		assertNotEmpty(object, "object");
+		final DocumentAccessor<Object> accessor = accessors.get(object);
+		if(accessor != null) {
+			return remove(accessor.getId(object), accessor.getRevision(object));
+		}
 		JsonObject jsonObject = getGson().toJsonTree(object).getAsJsonObject();
 		final String id = getAsString(jsonObject, "_id");
 		final String rev = getAsString(jsonObject, "_rev");
@@ -387,6 +619,7 @@ public abstract class CouchDbClientBase {
 		assertNotEmpty(id, "id");
 		assertNotEmpty(rev, "rev");
 		final URI uri = buildUri(getDBUri()).pathEncoded(id).query("rev", rev).build();
+		invalidate(id);
 		return delete(uri);
 	}
 	
@@ -398,13 +631,94 @@ public abstract class CouchDbClientBase {
 	 */
 	public List<Response> bulk(List<?> objects, boolean newEdits) {
 		assertNotEmpty(objects, "objects");
+		return bulk((Iterable<?>) objects, newEdits);
+	}
+	
+	/**
+	 * Performs bulk documents create and update request.
+	 * <p>The documents are serialized one at a time as the request body is sent, 
+	 * the request is never held in memory as a whole.
+	 * @param objects The documents objects.
+	 * @param newEdits If false, prevents the database from assigning documents new revision IDs.
+	 * @return {@code List<Response>} Containing the resulted entries.
+	 */
+	public List<Response> bulk(Iterable<?> objects, boolean newEdits) {
+		assertNotEmpty(objects, "objects");
+		return bulk(new BulkDocsEntity(getGson(), objects, newEdits));
+	}
+	
+	/**
+	 * Performs bulk documents create and update request from a source of unknown size.
+	 * <p>The documents are pulled from the iterator and serialized one at a time as the 
+	 * request body is sent, the request is never held in memory as a whole.
+	 * @param objects The documents objects.
+	 * @param newEdits If false, prevents the database from assigning documents new revision IDs.
+	 * @return {@code List<Response>} Containing the resulted entries.
+	 */
+	public List<Response> bulk(Iterator<?> objects, boolean newEdits) {
+		assertNotEmpty(objects, "objects");
+		return bulk(new BulkDocsEntity(getGson(), objects, newEdits));
+	}
+	
+	/**
+	 * Performs bulk documents create and update request, returning the resulted entries lazily
+	 * as they are read from the response stream.
+	 * <p>Entries are parsed one at a time, the response is never held in memory as a whole; 
+	 * failed entries are reported by {@link Response#getException()}.
+	 * The iterator should be closed if not read to the end, as to avoid connection leaks.
+	 * @param objects The documents objects.
+	 * @param newEdits If false, prevents the database from assigning documents new revision IDs.
+	 * @return A {@link StreamingIterator} over the resulted entries.
+	 * @see #bulk(Iterable, boolean)
+	 */
+	public StreamingIterator<Response> bulkIterator(Iterable<?> objects, boolean newEdits) {
+		assertNotEmpty(objects, "objects");
+		return bulkIterator(new BulkDocsEntity(getGson(), objects, newEdits));
+	}
+	
+	/**
+	 * Performs bulk documents create and update request from a source of unknown size, 
+	 * returning the resulted entries lazily as they are read from the response stream.
+	 * @param objects The documents objects.
+	 * @param newEdits If false, prevents the database from assigning documents new revision IDs.
+	 * @return A {@link StreamingIterator} over the resulted entries.
+	 * @see #bulkIterator(Iterable, boolean)
+	 */
+	public StreamingIterator<Response> bulkIterator(Iterator<?> objects, boolean newEdits) {
+		assertNotEmpty(objects, "objects");
+		return bulkIterator(new BulkDocsEntity(getGson(), objects, newEdits));
+	}
+	
+	private StreamingIterator<Response> bulkIterator(HttpEntity entity) {
+		final URI uri = buildUri(getDBUri()).path("_bulk_docs").build();
+		final HttpPost post = new HttpPost(uri);
+		post.setEntity(entity);
+		final HttpResponse response = executeRequest(post);
+		return new StreamingIterator<Response>(getStream(response)) {
+			@Override
+			void readHeader(JsonReader reader) throws IOException {
+				reader.beginArray();
+			}
+			
+			@Override
+			Response readEntry(JsonReader reader) throws IOException {
+				return invalidate(getGson().<Response>fromJson(reader, Response.class));
+			}
+		};
+	}
+	
+	private List<Response> bulk(HttpEntity entity) {
 		HttpResponse response = null;
 		try { 
-			final String newEditsVal = newEdits ? "\"new_edits\": true, " : "\"new_edits\": false, ";
-			final String json = String.format("{%s%s%s}", newEditsVal, "\"docs\": ", getGson().toJson(objects));
 			final URI uri = buildUri(getDBUri()).path("_bulk_docs").build();
-			response = post(uri, json);
-			return getResponseList(response);
+			final HttpPost post = new HttpPost(uri);
+			post.setEntity(entity);
+			response = executeRequest(post);
+			final List<Response> responses = getResponseList(response);
+			for (Response r : responses) {
+				invalidate(r);
+			}
+			return responses;
 		} finally {
 			close(response);
 		}
@@ -443,9 +757,195 @@ public abstract class CouchDbClientBase {
 		assertNotEmpty(contentType, "ContentType");
 		assertNotEmpty(docId, "docId");
 		final URI uri = buildUri(getDBUri()).pathEncoded(docId).path("/").path(name).query("rev", docRev).build();
+		invalidate(docId);
 		return put(uri, in, contentType);
 	}
 	
+	/**
+	 * Saves a file as an attachment to an existing document given both a document id
+	 * and revision, or save to a new document given only the id, and rev as {@code null}.
+	 * <p>The file is sent with a known length, and is read as it is sent rather than held in memory.
+	 * @param file The file holding the binary data.
+	 * @param name The attachment name.
+	 * @param contentType The attachment "Content-Type".
+	 * @param docId The document id to save the attachment under.
+	 * @param docRev The document revision to save the attachment under, or {@code null} when saving to a new document.
+	 * @return {@link Response}
+	 * @see #findAttachment(String, String, WritableByteChannel)
+	 */
+	public Response saveAttachment(File file, String name, String contentType, String docId, String docRev) {
+		assertNotEmpty(file, "file");
+		assertNotEmpty(name, "name");
+		assertNotEmpty(contentType, "ContentType");
+		assertNotEmpty(docId, "docId");
+		final FileEntity entity = new FileEntity(file);
+		entity.setContentType(contentType);
+		final URI uri = buildUri(getDBUri()).pathEncoded(docId).path("/").path(name).query("rev", docRev).build();
+		invalidate(docId);
+		return put(uri, entity);
+	}
+	
+	/**
+	 * Saves the content of a file channel, from its current position to its end, as an attachment 
+	 * to an existing document given both a document id and revision, or save to a new document 
+	 * given only the id, and rev as {@code null}.
+	 * <p>The content is sent with a known length using {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+	 * The channel position is not changed, and the channel is not closed.
+	 * @param channel The {@link FileChannel} holding the binary data.
+	 * @param name The attachment name.
+	 * @param contentType The attachment "Content-Type".
+	 * @param docId The document id to save the attachment under.
+	 * @param docRev The document revision to save the attachment under, or {@code null} when saving to a new document.
+	 * @return {@link Response}
+	 */
+	public Response saveAttachment(FileChannel channel, String name, String contentType, String docId, String docRev) {
+		assertNotEmpty(channel, "channel");
+		assertNotEmpty(name, "name");
+		assertNotEmpty(contentType, "ContentType");
+		assertNotEmpty(docId, "docId");
+		final ChannelEntity entity;
+		try {
+			final long position = channel.position();
+			entity = new ChannelEntity(channel, position, channel.size() - position, contentType);
+		} catch (IOException e) {
+			throw new CouchDbException("Error reading file channel.", e);
+		}
+		final URI uri = buildUri(getDBUri()).pathEncoded(docId).path("/").path(name).query("rev", docRev).build();
+		invalidate(docId);
+		return put(uri, entity);
+	}
+	
+	/**
+	 * Saves the remaining bytes of a buffer as an attachment to an existing document given both 
+	 * a document id and revision, or save to a new document given only the id, and rev as {@code null}.
+	 * <p>The buffer content is not copied, its position is not changed.
+	 * @param buffer The {@link ByteBuffer} holding the binary data.
+	 * @param name The attachment name.
+	 * @param contentType The attachment "Content-Type".
+	 * @param docId The document id to save the attachment under.
+	 * @param docRev The document revision to save the attachment under, or {@code null} when saving to a new document.
+	 * @return {@link Response}
+	 */
+	public Response saveAttachment(ByteBuffer buffer, String name, String contentType, String docId, String docRev) {
+		assertNotEmpty(buffer, "buffer");
+		assertNotEmpty(name, "name");
+		assertNotEmpty(contentType, "ContentType");
+		assertNotEmpty(docId, "docId");
+		final URI uri = buildUri(getDBUri()).pathEncoded(docId).path("/").path(name).query("rev", docRev).build();
+		invalidate(docId);
+		return put(uri, new ChannelEntity(buffer, contentType));
+	}
+	
+	/**
+	 * Reads an attachment into a channel, such as a {@link FileChannel}, through a fixed size buffer.
+	 * <p>The channel is not closed.
+	 * @param docId The document id.
+	 * @param name The attachment name.
+	 * @param target The channel to write the attachment to.
+	 * @throws NoDocumentException If the document or attachment is not found in the database.
+	 * @return The number of bytes written.
+	 */
+	public long findAttachment(String docId, String name, WritableByteChannel target) {
+		assertNotEmpty(docId, "docId");
+		assertNotEmpty(name, "name");
+		assertNotEmpty(target, "target");
+		final URI uri = buildUri(getDBUri()).pathEncoded(docId).path("/").path(name).build();
+		HttpResponse response = null;
+		try {
+			response = executeRequest(new HttpGet(uri));
+			final ReadableByteChannel source = Channels.newChannel(response.getEntity().getContent());
+			final ByteBuffer buffer = ByteBuffer.allocate(ATTACHMENT_BUFFER_SIZE);
+			long count = 0;
+			while (source.read(buffer) != -1) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					count += target.write(buffer);
+				}
+				buffer.clear();
+			}
+			return count;
+		} catch (IOException e) {
+			throw new CouchDbException("Error reading attachment.", e);
+		} finally {
+			close(response);
+		}
+	}
+	
+	/**
+	 * Saves an object and its binary attachments in a single <tt>multipart/related</tt> request, 
+	 * without base64 encoding the attachments.
+	 * <p>If the object doesn't have an <code>_id</code> value, the code will assign a <code>UUID</code> as the document id.
+	 * @param object The object to save
+	 * @param attachments The attachments to save along with the object.
+	 * @throws DocumentConflictException If a conflict is detected during the save.
+	 * @return {@link Response}
+	 */
+	public Response saveWithAttachments(Object object, List<MultipartAttachment> attachments) {
+		return putMultipart(object, attachments, true);
+	}
+	
+	/**
+	 * Updates an object and adds or replaces binary attachments in a single <tt>multipart/related</tt> request, 
+	 * the object must have the correct <code>_id</code> and <code>_rev</code> values.
+	 * <p>Attachments of the object's <code>_attachments</code> are kept, as with {@link #update(Object)}.
+	 * @param object The object to update
+	 * @param attachments The attachments to save along with the object.
+	 * @throws DocumentConflictException If a conflict is detected during the update.
+	 * @return {@link Response}
+	 */
+	public Response updateWithAttachments(Object object, List<MultipartAttachment> attachments) {
+		return putMultipart(object, attachments, false);
+	}
+	
+	/**
+	 * Finds a document and its attachments in a single <tt>multipart/related</tt> response,
+	 * the attachments are streamed to a handler without base64 decoding.
+	 * @param <T> Object type.
+	 * @param classType The class of type T.
+	 * @param id The document id.
+	 * @param handler Receives the attachments, before the document is returned.
+	 * @return An object of type T.
+	 * @throws NoDocumentException If the document is not found in the database.
+	 */
+	public <T> T findWithAttachments(Class<T> classType, String id, AttachmentHandler handler) {
+		assertNotEmpty(classType, "Class");
+		assertNotEmpty(id, "id");
+		assertNotEmpty(handler, "handler");
+		final HttpGet get = new HttpGet(buildUri(getDBUri()).pathEncoded(id).query("attachments", true).build());
+		get.addHeader("Accept", "multipart/related");
+		HttpResponse response = null;
+		try {
+			response = executeRequest(get);
+			final Header contentType = response.getEntity().getContentType();
+			final String boundary = contentType == null ? null : MultipartReader.boundary(contentType.getValue());
+			if(boundary == null) { // no attachments, a plain JSON response
+				return getGson().fromJson(new InputStreamReader(getStream(response), Charsets.UTF_8), classType);
+			}
+			final MultipartReader reader = new MultipartReader(getStream(response), boundary);
+			final Map<String, String> headers = new HashMap<String, String>();
+			final JsonObject json = new JsonParser().parse(new InputStreamReader(reader.nextPart(headers), Charsets.UTF_8)).getAsJsonObject();
+			final JsonObject attachments = json.has("_attachments") ? json.getAsJsonObject("_attachments") : new JsonObject();
+			for (Map.Entry<String, JsonElement> attachment : attachments.entrySet()) {
+				final JsonObject stub = attachment.getValue().getAsJsonObject();
+				if(!stub.has("follows") || !stub.get("follows").getAsBoolean()) {
+					continue;
+				}
+				headers.clear();
+				final InputStream part = reader.nextPart(headers);
+				if(part == null) {
+					throw new CouchDbException("Multipart response ended before attachment " + attachment.getKey());
+				}
+				final String type = stub.has("content_type") ? getAsString(stub, "content_type") : headers.get("content-type");
+				handler.onAttachment(attachment.getKey(), type, part);
+			}
+			return getGson().fromJson(json, classType);
+		} catch (IOException e) {
+			throw new CouchDbException("Error reading multipart document.", e);
+		} finally {
+			close(response);
+		}
+	}
+	
 	/**
 	 * Invokes an Update Handler.
 	 * <pre>
@@ -465,6 +965,7 @@ public abstract class CouchDbClientBase {
 		final String[] v = updateHandlerUri.split("/");
 		final String path = String.format("_design/%s/_update/%s/", v[0], v[1]);
 		final URI uri = buildUri(getDBUri()).path(path).path(docId).query(params).build();
+		invalidate(docId);
 		final HttpResponse response = executeRequest(new HttpPut(uri));
 		return streamToString(getStream(response));
 	}
@@ -476,9 +977,19 @@ public abstract class CouchDbClientBase {
 	 * @return {@link HttpResponse}
 	 */
 	public HttpResponse executeRequest(HttpRequestBase request) {
+		final HttpContext context = createContext();
+		final CouchDbMetrics metrics = this.metrics;
+		MeteredRequest metered = null;
+		if(metrics != null) {
+			metered = new MeteredRequest(metrics, request, dbURI);
+			context.setAttribute(MeteredRequest.CONTEXT_ATTRIBUTE, metered);
+		}
 		try {
-			return  httpClient.execute(host, request, createContext());
+			return  httpClient.execute(host, request, context);
 		} catch (IOException e) {
+			if(metered != null) {
+				metered.failed();
+			}
 			request.abort();
 			throw new CouchDbException("Error executing request. ", e);
 		} 
@@ -497,7 +1008,56 @@ public abstract class CouchDbClientBase {
 	 * @param gsonBuilder The {@link GsonBuilder}
 	 */
 	public void setGsonBuilder(GsonBuilder gsonBuilder) {
-		this.gson = initGson(gsonBuilder);
+		this.gsonBuilder = gsonBuilder;
+		setGson(initGson(gsonBuilder));
+	}
+	
+	/**
+	 * Registers a {@link TypeAdapter} to read and write objects of a type straight from and to 
+	 * the JSON stream, in place of Gson reflection.
+	 * <p>Adapters should be registered before use, as the Gson instance is rebuilt with each one.
+	 * @param type The object type, the adapter does not apply to its subclasses.
+	 * @param typeAdapter The adapter, eg. a {@link DocumentTypeAdapter}.
+	 * @see #registerTypeAdapterFactory(TypeAdapterFactory)
+	 */
+	public <T> void registerTypeAdapter(Class<T> type, TypeAdapter<T> typeAdapter) {
+		assertNotEmpty(type, "type");
+		assertNotEmpty(typeAdapter, "typeAdapter");
+		gsonBuilder.registerTypeAdapter(type, typeAdapter);
+		setGson(gsonBuilder.create());
+	}
+	
+	/**
+	 * Registers a {@link TypeAdapterFactory}, such as one generated for a set of domain classes.
+	 * <p>Factories should be registered before use, as the Gson instance is rebuilt with each one.
+	 * @param factory The factory.
+	 * @see #registerTypeAdapter(Class, TypeAdapter)
+	 */
+	public void registerTypeAdapterFactory(TypeAdapterFactory factory) {
+		assertNotEmpty(factory, "factory");
+		gsonBuilder.registerTypeAdapterFactory(factory);
+		setGson(gsonBuilder.create());
+	}
+	
+	/**
+	 * Sets the codec of document bodies, in place of the client's Gson instance.
+	 * <p>Gson's own {@link JsonElement} documents, e.g. {@link JsonObject}, are still read and 
+	 * written with Gson. Saving, updating or removing an object with no {@link DocumentAccessor} 
+	 * registered for its type also serializes it with Gson, to read its <code>_id</code> and 
+	 * <code>_rev</code>; register one as to serialize such objects once, with the codec only.
+	 * @param jsonCodec The {@link JsonCodec}, or {@code null} to use Gson.
+	 * @see #registerDocumentAccessor(Class, DocumentAccessor)
+	 */
+	public void setJsonCodec(JsonCodec jsonCodec) {
+		this.jsonCodec = jsonCodec;
+	}
+	
+	/**
+	 * @return The codec of document bodies, a {@link GsonCodec} unless set otherwise.
+	 */
+	public JsonCodec getJsonCodec() {
+		final JsonCodec codec = jsonCodec;
+		return codec != null ? codec : gsonCodec;
 	}
 	
 	/**
@@ -521,6 +1081,47 @@ public abstract class CouchDbClientBase {
 		return gson;
 	}
 	
+	/**
+	 * Sets a cache for documents read by {@link #find(Class, String)}.
+	 * @param documentCache The {@link DocumentCache}, or {@code null} to disable caching.
+	 */
+	public void setDocumentCache(DocumentCache documentCache) {
+		this.documentCache = documentCache;
+	}
+	
+	/**
+	 * @return The {@link DocumentCache}, or {@code null} if caching is disabled.
+	 */
+	public DocumentCache getDocumentCache() {
+		return documentCache;
+	}
+	
+	/**
+	 * Sets a receiver for measurements of the HTTP requests made by this client.
+	 * @param metrics The {@link CouchDbMetrics}, or {@code null} to disable measuring.
+	 * @see SimpleCouchDbMetrics
+	 */
+	public void setMetrics(CouchDbMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * @return The {@link CouchDbMetrics}, or {@code null} if measuring is disabled.
+	 */
+	public CouchDbMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Registers how to read the <code>_id</code> and <code>_rev</code> of objects of a type,
+	 * as to save, update and remove them without first converting them to a JSON tree.
+	 * @param type The object type, applies to its subclasses too.
+	 * @param accessor The {@link DocumentAccessor}
+	 */
+	public <T> void registerDocumentAccessor(Class<T> type, DocumentAccessor<? super T> accessor) {
+		accessors.register(type, accessor);
+	}
+	
 	// End - Public API
 	
 	/**
@@ -558,6 +1159,68 @@ public abstract class CouchDbClientBase {
 		}
 	}
 	
+	/**
+	 * @return The codec of documents of the given type, Gson for its own {@link JsonElement}s.
+	 */
+	private JsonCodec getJsonCodec(Class<?> type) {
+		return JsonElement.class.isAssignableFrom(type) ? gsonCodec : getJsonCodec();
+	}
+	
+	/**
+	 * Performs a HTTP GET request of a document, decoded with the {@link JsonCodec}.
+	 * @return An object of type T
+	 */
+	private <T> T getDocument(URI uri, Class<T> classType) {
+		InputStream in = null;
+		try {
+			in = get(uri);
+			return getJsonCodec(classType).<T>decode(in, classType);
+		} catch (IOException e) {
+			throw new CouchDbException("Error reading response. ", e);
+		} finally {
+			close(in);
+		}
+	}
+	
+	/**
+	 * Performs a HTTP GET request, revalidating a cached document with its <tt>ETag</tt>.
+	 * @return An object of type T
+	 */
+	private <T> T getCached(URI uri, String id, Class<T> classType, DocumentCache cache) {
+		final DocumentCache.Entry cached = cache.get(id);
+		final HttpGet get = new HttpGet(uri);
+		get.addHeader("Accept", "application/json");
+		if(cached != null) {
+			get.addHeader("If-None-Match", cached.etag);
+		}
+		HttpResponse response = null;
+		try {
+			response = executeRequest(get);
+			byte[] body;
+			if(cached != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+				cache.recordHit();
+				body = cached.body;
+			} else {
+				cache.recordMiss();
+				body = EntityUtils.toByteArray(response.getEntity());
+				final Header etag = response.getFirstHeader("ETag");
+				if(etag != null) {
+					cache.put(id, etag.getValue(), body);
+				}
+			}
+			return getJsonCodec(classType).<T>decode(new ByteArrayInputStream(body), classType);
+		} catch (NoDocumentException e) {
+			cache.invalidate(id);
+			throw e;
+		} catch (IOException e) {
+			throw new CouchDbException("Error reading response. ", e);
+		} finally {
+			if(response != null) {
+				close(response);
+			}
+		}
+	}
+	
 	/**
 	 * Performs a HTTP HEAD request. 
 	 * @return {@link HttpResponse}
@@ -574,9 +1237,21 @@ public abstract class CouchDbClientBase {
 		assertNotEmpty(object, "object");
 		HttpResponse response = null;
 		try {  
-			final JsonObject json = getGson().toJsonTree(object).getAsJsonObject();
-			String id = getAsString(json, "_id");
-			String rev = getAsString(json, "_rev");
+			final DocumentAccessor<Object> accessor = accessors.get(object);
+			final Object body;
+			String id;
+			String rev;
+			if(accessor != null) { // serialized once, straight to the request
+				body = object;
+				id = accessor.getId(object);
+				rev = accessor.getRevision(object);
+			} else {
+				final JsonObject json = object instanceof JsonObject ? (JsonObject) object 
+						: getGson().toJsonTree(object).getAsJsonObject();
+				body = jsonCodec == null ? json : object;
+				id = getAsString(json, "_id");
+				rev = getAsString(json, "_rev");
+			}
 			if(newEntity) { // save
 				assertNull(rev, "rev");
 				id = (id == null) ? generateUUID() : id;
@@ -585,7 +1260,8 @@ public abstract class CouchDbClientBase {
 				assertNotEmpty(rev, "rev");
 			}
 			final HttpPut put = new HttpPut(buildUri(uri).pathEncoded(id).build());
-			setEntity(put, json.toString());
+			put.setEntity(new JsonEntity(getJsonCodec(body.getClass()), body));
+			invalidate(id);
 			response = executeRequest(put); 
 			return getResponse(response);
 		} finally {
@@ -593,16 +1269,56 @@ public abstract class CouchDbClientBase {
 		}
 	}
 	
+	/**
+	 * Performs a HTTP PUT request, saves or updates a document along with binary attachments.
+	 * @return {@link Response}
+	 */
+	private Response putMultipart(Object object, List<MultipartAttachment> attachments, boolean newEntity) {
+		assertNotEmpty(object, "object");
+		assertNotEmpty(attachments, "attachments");
+		final JsonObject json = getGson().toJsonTree(object).getAsJsonObject();
+		String id = getAsString(json, "_id");
+		final String rev = getAsString(json, "_rev");
+		if(newEntity) { // save
+			assertNull(rev, "rev");
+			id = (id == null) ? generateUUID() : id;
+		} else { // update
+			assertNotEmpty(id, "id");
+			assertNotEmpty(rev, "rev");
+		}
+		final JsonObject stubs = json.has("_attachments") ? json.getAsJsonObject("_attachments") : new JsonObject();
+		for (MultipartAttachment attachment : attachments) {
+			final JsonObject follows = new JsonObject();
+			follows.addProperty("follows", true);
+			follows.addProperty("content_type", attachment.getContentType());
+			follows.addProperty("length", attachment.getLength());
+			stubs.remove(attachment.getName()); // parts follow in the order of the stubs
+			stubs.add(attachment.getName(), follows);
+		}
+		json.add("_attachments", stubs);
+		final URI uri = buildUri(getDBUri()).pathEncoded(id).build();
+		invalidate(id);
+		return put(uri, new MultipartRelatedEntity(json.toString(), attachments));
+	}
+	
 	/**
 	 * Performs a HTTP PUT request, saves an attachment.
 	 * @return {@link Response}
 	 */
 	Response put(URI uri, InputStream instream, String contentType) {
+		final InputStreamEntity entity = new InputStreamEntity(instream, -1);
+		entity.setContentType(contentType);
+		return put(uri, entity);
+	}
+	
+	/**
+	 * Performs a HTTP PUT request of the given entity.
+	 * @return {@link Response}
+	 */
+	Response put(URI uri, HttpEntity entity) {
 		HttpResponse response = null;
 		try {
 			final HttpPut httpPut = new HttpPut(uri);
-			final InputStreamEntity entity = new InputStreamEntity(instream, -1);
-			entity.setContentType(contentType);
 			httpPut.setEntity(entity);
 			response = executeRequest(httpPut);
 			return getResponse(response);
@@ -621,6 +1337,16 @@ public abstract class CouchDbClientBase {
 		return executeRequest(post);
 	}
 	
+	/**
+	 * Performs a HTTP POST request.
+	 * @return {@link HttpResponse}
+	 */
+	HttpResponse post(URI uri, HttpEntity entity) {
+		HttpPost post = new HttpPost(uri);
+		post.setEntity(entity);
+		return executeRequest(post);
+	}
+	
 	/**
 	 * Performs a HTTP DELETE request.
 	 * @return {@link Response}
@@ -638,13 +1364,114 @@ public abstract class CouchDbClientBase {
 	
 	// Helpers
 	
+	/**
+	 * Runs the given requests concurrently, up to the maximum number of connections.
+	 * <p>A single task runs on the calling thread. A failed task fails the call with 
+	 * its own exception; the remaining tasks are cancelled.
+	 * @return The task results, in the order of the tasks.
+	 */
+	<V> List<V> invokeAll(List<? extends Callable<V>> tasks) {
+		final List<V> results = new ArrayList<V>(tasks.size());
+		if(tasks.size() < 2) {
+			for (Callable<V> task : tasks) {
+				results.add(call(task));
+			}
+			return results;
+		}
+		final List<FutureTask<V>> futures = new ArrayList<FutureTask<V>>(tasks.size());
+		try {
+			for (Callable<V> task : tasks) {
+				futures.add(runInBackground(task));
+			}
+			for (FutureTask<V> future : futures) {
+				results.add(await(future));
+			}
+			return results;
+		} finally {
+			for (FutureTask<V> future : futures) {
+				future.cancel(true); // if failed early
+			}
+		}
+	}
+	
+	/**
+	 * Runs a request on the client's worker threads.
+	 * @return The pending result, see {@link #await(FutureTask)}.
+	 */
+	<V> FutureTask<V> runInBackground(Callable<V> task) {
+		final FutureTask<V> future = new FutureTask<V>(task);
+		try {
+			getExecutor().execute(future);
+		} catch (RejectedExecutionException e) {
+			// shut down, left to await()
+		}
+		return future;
+	}
+	
+	/**
+	 * @return The worker threads, one per connection, started on first use.
+	 */
+	private synchronized ExecutorService getExecutor() {
+		if(executor == null) {
+			executor = Executors.newFixedThreadPool(maxConnections, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					final Thread thread = new Thread(r, "lightcouch-worker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+	
+	/**
+	 * Stops the worker threads, if started.
+	 */
+	synchronized void shutdownExecutor() {
+		if(executor != null) {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Waits for the result of a request run in the background. A request that no worker 
+	 * has started yet is run on the calling thread instead, so that a worker waiting on 
+	 * other requests, e.g. a <tt>findAll</tt> from a <tt>parallelScan</tt> handler, never 
+	 * waits on a saturated executor.
+	 * @throws CouchDbException If interrupted, or the request failed with a checked exception.
+	 */
+	static <V> V await(FutureTask<V> future) {
+		future.run(); // no-op if started or cancelled
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CouchDbException("Interrupted while waiting for requests.", e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new CouchDbException("Request failed.", e.getCause());
+		}
+	}
+	
+	private static <V> V call(Callable<V> task) {
+		try {
+			return task.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new CouchDbException("Request failed.", e);
+		}
+	}
+	
 	/**
 	 * Validates a HTTP response; on error cases logs status and throws relevant exceptions.
 	 * @param response The HTTP response.
 	 */
-	void validate(HttpResponse response) throws IOException {
+	static void validate(HttpResponse response) throws IOException {
 		final int code = response.getStatusLine().getStatusCode();
-		if(code == 200 || code == 201 || code == 202) { // success (ok | created | accepted)
+		if(code == 200 || code == 201 || code == 202 || code == 304) { // success (ok | created | accepted | not modified)
 			return;
 		} 
 		String reason = response.getStatusLine().getReasonPhrase();
@@ -680,6 +1507,27 @@ public abstract class CouchDbClientBase {
 		return getGson().fromJson(reader, new TypeToken<List<Response>>(){}.getType());
 	}
 	
+	/**
+	 * Removes a document from the cache, if any, as it is being written.
+	 */
+	private void invalidate(String id) {
+		final DocumentCache cache = documentCache;
+		if(cache != null && id != null) {
+			cache.invalidate(id);
+		}
+	}
+	
+	/**
+	 * Removes the document of a write response from the cache, if any.
+	 * @return The given {@link Response}
+	 */
+	private Response invalidate(Response response) {
+		if(response != null) {
+			invalidate(response.getId());
+		}
+		return response;
+	}
+	
 	/**
 	 * Sets a JSON String as a request entity.
 	 * @param httpRequest The request to set entity.
@@ -691,11 +1539,16 @@ public abstract class CouchDbClientBase {
 		httpRequest.setEntity(entity);
 	}
 	
+	private void setGson(Gson gson) {
+		this.gson = gson;
+		this.gsonCodec = new GsonCodec(gson);
+	}
+	
 	/**
 	 * Builds {@link Gson} and registers any required serializer/deserializer.
 	 * @return {@link Gson} instance
 	 */
-	private Gson initGson(GsonBuilder gsonBuilder) {
+	static Gson initGson(GsonBuilder gsonBuilder) {
 		gsonBuilder.registerTypeAdapter(JsonObject.class, new JsonDeserializer<JsonObject>() {
 			public JsonObject deserialize(JsonElement json,
 					Type typeOfT, JsonDeserializationContext context)
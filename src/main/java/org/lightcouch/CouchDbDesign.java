@@ -28,11 +28,17 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.codec.Charsets;
+import org.apache.commons.codec.digest.DigestUtils;
 
 import org.lightcouch.DesignDocument.MapReduce;
 
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 
 /**
  * Provides API to work with design documents. 
@@ -81,9 +87,9 @@ public class CouchDbDesign {
 	 * Synchronizes a design document to the Database.
 	 * <p>This method will first try to find a document in the database with the same id
 	 * as the given document, if it is not found then the given document will be saved to the database.
-	 * <p>If the document was found in the database, it will be compared with the given document using
-	 *  {@code equals()}. If both documents are not equal, then the given document will be saved to the 
-	 *  database and updates the existing document.
+	 * <p>If the document was found in the database, it will be compared with the given document by 
+	 * content hash, see {@link #synchronizeAllWithDb()}. If both documents are not equal, then the given 
+	 * document will be saved to the database and updates the existing document.
 	 * @param document The design document to synchronize
 	 * @return {@link Response} as a result of a document save or update, or returns {@code null} if no 
 	 * action was taken and the document in the database is up-to-date with the given document.
@@ -96,7 +102,7 @@ public class CouchDbDesign {
 		} catch (NoDocumentException e) {
 			return dbc.save(document);
 		}
-		if(!document.equals(documentFromDb)) { 
+		if(!contentHash(document).equals(contentHash(documentFromDb))) { 
 			document.setRevision(documentFromDb.getRevision());
 			return dbc.update(document);
 		}
@@ -105,13 +111,81 @@ public class CouchDbDesign {
 	
 	/**
 	 * Synchronize all design documents on desk to the database.
+	 * <p>The documents in the database are fetched with a single <tt>_all_docs</tt> request and 
+	 * compared by a hash of their content, all serialized fields in canonical order, rather than 
+	 * {@code equals()}; changed documents are saved with a single <tt>_bulk_docs</tt> request. 
+	 * Unchanged documents are not written, as to keep their view indexes.
 	 * @see #synchronizeWithDb(DesignDocument)
 	 * @see CouchDbClient#syncDesignDocsWithDb()
+	 * @throws CouchDbException If a document failed to save, e.g. on a concurrent update.
 	 */
 	public void synchronizeAllWithDb() {
-		List<DesignDocument> documents = getAllFromDesk();
+		final List<DesignDocument> documents = getAllFromDesk();
+		if(documents.isEmpty()) {
+			return;
+		}
+		final List<String> ids = new ArrayList<String>(documents.size());
 		for (DesignDocument dd : documents) {
-			synchronizeWithDb(dd);
+			ids.add(dd.getId());
+		}
+		final Map<String, DesignDocument> fromDb = dbc.findAll(DesignDocument.class, ids).getDocuments();
+		final List<DesignDocument> changed = new ArrayList<DesignDocument>();
+		for (DesignDocument dd : documents) {
+			final String hash = contentHash(dd);
+			final DesignDocument documentFromDb = fromDb.get(dd.getId());
+			if(documentFromDb == null || !hash.equals(contentHash(documentFromDb))) {
+				dd.setRevision(documentFromDb != null ? documentFromDb.getRevision() : null);
+				changed.add(dd);
+			}
+		}
+		if(changed.isEmpty()) {
+			return;
+		}
+		for (Response response : dbc.bulk(changed, true)) {
+			if(response.getError() != null) {
+				throw new CouchDbException(format("Error synchronizing design document %s: %s, %s", 
+						response.getId(), response.getError(), response.getReason()));
+			}
+		}
+	}
+	
+	/**
+	 * @return The SHA-256 of the document's JSON, less <tt>_rev</tt>, with object keys in sorted order.
+	 */
+	private String contentHash(DesignDocument document) {
+		final JsonObject json = dbc.getGson().toJsonTree(document).getAsJsonObject();
+		json.remove("_rev");
+		final StringBuilder canonical = new StringBuilder();
+		appendCanonical(json, canonical);
+		return DigestUtils.sha256Hex(canonical.toString().getBytes(Charsets.UTF_8));
+	}
+	
+	private static void appendCanonical(JsonElement element, StringBuilder out) {
+		if(element.isJsonObject()) {
+			final TreeMap<String, JsonElement> sorted = new TreeMap<String, JsonElement>();
+			for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+				sorted.put(entry.getKey(), entry.getValue());
+			}
+			out.append('{');
+			for (Map.Entry<String, JsonElement> entry : sorted.entrySet()) {
+				if(out.charAt(out.length() - 1) != '{') {
+					out.append(',');
+				}
+				out.append(new JsonPrimitive(entry.getKey())).append(':');
+				appendCanonical(entry.getValue(), out);
+			}
+			out.append('}');
+		} else if(element.isJsonArray()) {
+			out.append('[');
+			for (int i = 0; i < element.getAsJsonArray().size(); i++) {
+				if(i > 0) {
+					out.append(',');
+				}
+				appendCanonical(element.getAsJsonArray().get(i), out);
+			}
+			out.append(']');
+		} else {
+			out.append(element);
 		}
 	}
 	
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+/**
+ * Receives measurements of the HTTP requests made by a client.
+ * <p>Requests are grouped by operation, one of: <code>find</code>, <code>contains</code>, <code>save</code>,
+ * <code>remove</code>, <code>bulk</code>, <code>view</code>, <code>changes</code>, <code>query</code>
+ * (for <tt>_find</tt>), <code>server</code> (requests outside the database) or <code>other</code>.
+ * <p>Implementations are called from request threads, and should be thread-safe and fast.
+ * {@link SimpleCouchDbMetrics} keeps the measurements in memory; other monitoring libraries
+ * can be bound by implementing this interface.
+ * @see CouchDbClientBase#setMetrics(CouchDbMetrics)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public interface CouchDbMetrics {
+
+	/**
+	 * Called once the response status and headers are received.
+	 * @param operation The operation name.
+	 * @param statusCode The response status code.
+	 * @param durationNanos The time since the request was sent.
+	 * @param bytesSent The size of the request body, 0 if none.
+	 */
+	void requestCompleted(String operation, int statusCode, long durationNanos, long bytesSent);
+
+	/**
+	 * Called when a request fails without a response, eg. on a connection error.
+	 * @param operation The operation name.
+	 * @param durationNanos The time since the request was sent.
+	 */
+	void requestFailed(String operation, long durationNanos);
+
+	/**
+	 * Called when a response body is read to the end, or closed.
+	 * @param operation The operation name.
+	 * @param bytes The number of body bytes read.
+	 */
+	void bytesReceived(String operation, long bytes);
+
+	/**
+	 * Called when a request is retried, eg. reconnecting a dropped changes feed.
+	 * @param operation The operation name.
+	 */
+	void retried(String operation);
+}
@@ -20,21 +20,39 @@ import static java.lang.String.format;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
+import javax.net.ssl.SSLContext;
+
+import org.apache.commons.logging.Log;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.RequestLine;
+import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
@@ -101,6 +119,8 @@ final class CouchDbUtil {
 	
 	private static final String SPRING_BOOT_DIR = "BOOT-INF/classes/";
 	
+	private static final Map<String, List<String>> JAR_ENTRIES = new ConcurrentHashMap<String, List<String>>();
+	
 	/**
 	 * List directory contents for a resource folder. Not recursive.
 	 * This is basically a brute-force implementation.
@@ -119,14 +139,8 @@ final class CouchDbUtil {
 			}
 			if (dirURL != null && dirURL.getProtocol().equals("jar")) {
 				String jarPath = dirURL.getPath().substring(5, dirURL.getPath().indexOf("!")); 
-				JarFile jar = new JarFile(URLDecoder.decode(jarPath, "UTF-8"));
-				Enumeration<JarEntry> entries = jar.entries(); 
 				Set<String> result = new HashSet<String>(); 
-				while(entries.hasMoreElements()) {
-					String name = entries.nextElement().getName();
-					if (name.startsWith(SPRING_BOOT_DIR)) {
-						name = name.substring(SPRING_BOOT_DIR.length());
-					}
+				for (String name : jarEntries(URLDecoder.decode(jarPath, "UTF-8"))) {
 					if (name.startsWith(path)) { 
 						String entry = name.substring(path.length());
 						int checkSubdir = entry.indexOf("/");
@@ -138,7 +152,6 @@ final class CouchDbUtil {
 						}
 					}
 				}
-				close(jar);
 				return new ArrayList<String>(result);
 			} 
 			return null;
@@ -147,6 +160,31 @@ final class CouchDbUtil {
 		}
 	}
 
+	/**
+	 * @return The entry names of a jar, read once per jar; Spring Boot's classes folder prefix is removed.
+	 */
+	private static List<String> jarEntries(String jarPath) throws IOException {
+		List<String> names = JAR_ENTRIES.get(jarPath);
+		if (names == null) {
+			names = new ArrayList<String>();
+			JarFile jar = new JarFile(jarPath);
+			try {
+				Enumeration<JarEntry> entries = jar.entries(); 
+				while(entries.hasMoreElements()) {
+					String name = entries.nextElement().getName();
+					if (name.startsWith(SPRING_BOOT_DIR)) {
+						name = name.substring(SPRING_BOOT_DIR.length());
+					}
+					names.add(name);
+				}
+			} finally {
+				close(jar);
+			}
+			JAR_ENTRIES.put(jarPath, names);
+		}
+		return names;
+	}
+
 	public static String readFile(String path) {
 		InputStream instream = CouchDbUtil.class.getResourceAsStream(path);
 		StringBuilder content = new StringBuilder();
@@ -186,6 +224,50 @@ final class CouchDbUtil {
 	    return str;
 	}
 	
+	// HTTP
+	
+	/**
+	 * @return An {@link SSLContext} trusting any server certificate.
+	 */
+	public static SSLContext createTrustAllSslContext() throws KeyManagementException, NoSuchAlgorithmException, KeyStoreException {
+		return SSLContexts.custom()
+				.loadTrustMaterial(null, new TrustStrategy(){
+					public boolean isTrusted(X509Certificate[] chain, String authType)
+							throws CertificateException {
+						return true;
+					}
+				}).build();
+	}
+	
+	/**
+	 * @return A request interceptor logging the request line.
+	 */
+	public static HttpRequestInterceptor requestLogger(final Log log) {
+		return new HttpRequestInterceptor() {
+			public void process(final HttpRequest request,
+					final HttpContext context) throws IOException {
+				if (log.isInfoEnabled()) {
+					RequestLine req = request.getRequestLine();
+					log.info("> " + req.getMethod() + " " + URLDecoder.decode(req.getUri(), "UTF-8"));
+				}
+			}
+		};
+	}
+	
+	/**
+	 * @return A response interceptor logging the response status.
+	 */
+	public static HttpResponseInterceptor responseLogger(final Log log) {
+		return new HttpResponseInterceptor() {
+			public void process(final HttpResponse response,
+					final HttpContext context) throws IOException {
+				if (log.isInfoEnabled()) {
+					log.info("< Status: " + response.getStatusLine().getStatusCode());
+				}
+			}
+		};
+	}
+	
 	/**
 	 * Closes the response input stream.
 	 * 
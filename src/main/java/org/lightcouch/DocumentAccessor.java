@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+/**
+ * Reads the <code>_id</code> and <code>_rev</code> of objects of a type, as to save and update
+ * them without first converting them to a JSON tree.
+ * <p>Accessors are built-in for {@link Document}, {@link com.google.gson.JsonObject} and {@link java.util.Map};
+ * other types are converted to a tree to find their <code>_id</code> and <code>_rev</code>.
+ * <p>The values returned must be the same as those the client's {@link com.google.gson.Gson} serializes.
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * dbClient.registerDocumentAccessor(Foo.class, new DocumentAccessor&lt;Foo&gt;() {
+ * 	public String getId(Foo foo) { return foo.get_id(); }
+ * 	public String getRevision(Foo foo) { return foo.get_rev(); }
+ * });
+ * </pre>
+ * @see CouchDbClientBase#registerDocumentAccessor(Class, DocumentAccessor)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public interface DocumentAccessor<T> {
+
+	/**
+	 * @param object The object to read.
+	 * @return The <code>_id</code> value, or <code>null</code>.
+	 */
+	String getId(T object);
+
+	/**
+	 * @param object The object to read.
+	 * @return The <code>_rev</code> value, or <code>null</code>.
+	 */
+	String getRevision(T object);
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import static org.lightcouch.CouchDbUtil.assertNotEmpty;
+import static org.lightcouch.CouchDbUtil.getAsString;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.JsonObject;
+
+/**
+ * The {@link DocumentAccessor}s of a client, looked up by the object class or its nearest superclass.
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+final class DocumentAccessors {
+
+	private static final DocumentAccessor<Document> DOCUMENT = new DocumentAccessor<Document>() {
+		public String getId(Document document) {
+			return document.getId();
+		}
+
+		public String getRevision(Document document) {
+			return document.getRevision();
+		}
+	};
+
+	private static final DocumentAccessor<JsonObject> JSON_OBJECT = new DocumentAccessor<JsonObject>() {
+		public String getId(JsonObject json) {
+			return getAsString(json, "_id");
+		}
+
+		public String getRevision(JsonObject json) {
+			return getAsString(json, "_rev");
+		}
+	};
+
+	private static final DocumentAccessor<Map<?, ?>> MAP = new DocumentAccessor<Map<?, ?>>() {
+		public String getId(Map<?, ?> map) {
+			return asString(map.get("_id"));
+		}
+
+		public String getRevision(Map<?, ?> map) {
+			return asString(map.get("_rev"));
+		}
+	};
+
+	private final Map<Class<?>, DocumentAccessor<?>> accessors = new ConcurrentHashMap<Class<?>, DocumentAccessor<?>>();
+
+	DocumentAccessors() {
+		accessors.put(Document.class, DOCUMENT);
+		accessors.put(JsonObject.class, JSON_OBJECT);
+	}
+
+	<T> void register(Class<T> type, DocumentAccessor<? super T> accessor) {
+		assertNotEmpty(type, "type");
+		assertNotEmpty(accessor, "accessor");
+		accessors.put(type, accessor);
+	}
+
+	/**
+	 * @return The accessor of the object class, or <code>null</code> if it has none.
+	 */
+	@SuppressWarnings("unchecked")
+	DocumentAccessor<Object> get(Object object) {
+		for (Class<?> type = object.getClass(); type != null; type = type.getSuperclass()) {
+			final DocumentAccessor<?> accessor = accessors.get(type);
+			if(accessor != null) {
+				return (DocumentAccessor<Object>) accessor;
+			}
+		}
+		return object instanceof Map ? (DocumentAccessor<Object>) (DocumentAccessor<?>) MAP : null;
+	}
+
+	private static String asString(Object value) {
+		return value == null ? null : value.toString();
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A size-bounded, least recently used cache of documents read by {@link CouchDbClientBase#find(Class, String)}.
+ * <p>Entries hold the raw document body along with its <tt>ETag</tt>. Every lookup is revalidated
+ * with an <tt>If-None-Match</tt> request; a <tt>304 Not Modified</tt> answer is served from the cache
+ * without transferring the document again, hence a cached document is never stale.
+ * Each lookup deserializes its own copy, as documents are mutable objects.
+ * <p>Writes through the owning client invalidate their entries. Writes by other clients may be
+ * followed by listening to the database changes feed, see {@link #invalidateOnChanges(CouchDbClientBase)}.
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * DocumentCache cache = new DocumentCache(1000);
+ * dbClient.setDocumentCache(cache);
+ * cache.invalidateOnChanges(dbClient); // optional
+ *
+ * Foo foo = dbClient.find(Foo.class, "doc-id"); // cached after the first read
+ *
+ * cache.close(); // stops listening to changes
+ * </pre>
+ * @see CouchDbClientBase#setDocumentCache(DocumentCache)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class DocumentCache {
+	private static final Log log = LogFactory.getLog(DocumentCache.class);
+
+	private final Map<String, Entry> entries;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private volatile Changes changes;
+
+	/**
+	 * @param maxEntries The maximum number of documents to hold, the least recently used are evicted first.
+	 */
+	public DocumentCache(final int maxEntries) {
+		if(maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries should be positive.");
+		}
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Removes a document from the cache.
+	 * @param id The document id.
+	 */
+	public void invalidate(String id) {
+		synchronized (entries) {
+			entries.remove(id);
+		}
+	}
+
+	/**
+	 * Removes all documents from the cache.
+	 */
+	public void invalidateAll() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * @return The number of cached documents.
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * @return The number of lookups answered with <tt>304 Not Modified</tt>.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return The number of lookups that transferred the document.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Invalidates entries as documents change in the database, including changes made by other clients.
+	 * <p>A background thread follows the continuous changes feed from the current update sequence,
+	 * reconnecting when dropped, until {@link #close()} is called.
+	 * @param dbc The client to read the changes feed with.
+	 */
+	public synchronized void invalidateOnChanges(final CouchDbClientBase dbc) {
+		if(changes != null) {
+			throw new IllegalStateException("Already listening to changes.");
+		}
+		final Changes feed = dbc.changes().since("now").heartBeat(10000).reconnect(1000, 60000);
+		changes = feed;
+		final Thread listener = new Thread(new Runnable() {
+			public void run() {
+				try {
+					feed.continuousChanges();
+					while (feed.hasNext()) {
+						invalidate(feed.next().getId());
+					}
+				} catch (CouchDbException e) {
+					log.warn("Changes feed stopped, clearing the document cache.", e);
+					invalidateAll();
+				}
+			}
+		}, "lightcouch-cache-invalidator");
+		listener.setDaemon(true);
+		listener.start();
+	}
+
+	/**
+	 * Stops listening to changes, if started. Cached entries are kept.
+	 */
+	public synchronized void close() {
+		if(changes != null) {
+			changes.stop();
+			changes = null;
+		}
+	}
+
+	Entry get(String id) {
+		synchronized (entries) {
+			return entries.get(id);
+		}
+	}
+
+	void put(String id, String etag, byte[] body) {
+		synchronized (entries) {
+			entries.put(id, new Entry(etag, body));
+		}
+	}
+
+	void recordHit() {
+		hitCount.incrementAndGet();
+	}
+
+	void recordMiss() {
+		missCount.incrementAndGet();
+	}
+
+	/**
+	 * A cached document body along with its <tt>ETag</tt>.
+	 */
+	static class Entry {
+		final String etag;
+		final byte[] body;
+
+		Entry(String etag, byte[] body) {
+			this.etag = etag;
+			this.body = body;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Base class of hand-written or generated {@link TypeAdapter}s for {@link Document} subclasses,
+ * reads and writes the document fields straight from and to the JSON stream, without reflection.
+ * <p>This class handles <code>_id</code>, <code>_rev</code> and <code>_attachments</code>, 
+ * subclasses handle their own fields.
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * dbClient.registerTypeAdapter(Bar.class, new DocumentTypeAdapter&lt;Bar&gt;() {
+ * 	protected Bar newInstance() { 
+ * 		return new Bar(); 
+ * 	}
+ * 	protected void readField(JsonReader in, Bar bar, String name) throws IOException {
+ * 		if("bar".equals(name)) bar.setBar(in.nextString()); 
+ * 		else in.skipValue();
+ * 	}
+ * 	protected void writeFields(JsonWriter out, Bar bar) throws IOException {
+ * 		out.name("bar").value(bar.getBar());
+ * 	}
+ * });
+ * </pre>
+ * @see CouchDbClientBase#registerTypeAdapter(Class, TypeAdapter)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public abstract class DocumentTypeAdapter<T extends Document> extends TypeAdapter<T> {
+
+	private static final TypeAdapter<Map<String, Attachment>> attachments = new Gson().getAdapter(new TypeToken<Map<String, Attachment>>(){});
+
+	/**
+	 * @return A new, empty document.
+	 */
+	protected abstract T newInstance();
+
+	/**
+	 * Reads a field value into the document, unknown fields must be skipped with {@link JsonReader#skipValue()}.
+	 * @param in The reader, positioned at the field value.
+	 * @param document The document to read into.
+	 * @param name The field name.
+	 */
+	protected abstract void readField(JsonReader in, T document, String name) throws IOException;
+
+	/**
+	 * Writes the document fields, other than <code>_id</code>, <code>_rev</code> and <code>_attachments</code>.
+	 * @param out The writer, within the document object.
+	 * @param document The document to write.
+	 */
+	protected abstract void writeFields(JsonWriter out, T document) throws IOException;
+
+	@Override
+	public T read(JsonReader in) throws IOException {
+		if(in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		final T document = newInstance();
+		in.beginObject();
+		while (in.hasNext()) {
+			final String name = in.nextName();
+			if("_id".equals(name)) {
+				document.setId(StreamingIterator.nextStringOrNull(in));
+			} else if("_rev".equals(name)) {
+				document.setRevision(StreamingIterator.nextStringOrNull(in));
+			} else if("_attachments".equals(name)) {
+				document.setAttachments(attachments.read(in));
+			} else {
+				readField(in, document, name);
+			}
+		}
+		in.endObject();
+		return document;
+	}
+
+	@Override
+	public void write(JsonWriter out, T document) throws IOException {
+		if(document == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		if(document.getId() != null) {
+			out.name("_id").value(document.getId());
+		}
+		if(document.getRevision() != null) {
+			out.name("_rev").value(document.getRevision());
+		}
+		if(document.getAttachments() != null) {
+			out.name("_attachments");
+			attachments.write(out, document.getAttachments());
+		}
+		writeFields(out, document);
+		out.endObject();
+	}
+}
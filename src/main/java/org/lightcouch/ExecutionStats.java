@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Holds the <tt>execution_stats</tt> of a Mango query, summed over the requests of a query.
+ * <p>A number of documents examined far greater than the results returned suggests a query 
+ * that is not served by an index.
+ * @see MangoQuery#executionStats(boolean)
+ * @see MangoIterator#getExecutionStats()
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class ExecutionStats {
+
+	@SerializedName("total_keys_examined")
+	private long totalKeysExamined;
+	@SerializedName("total_docs_examined")
+	private long totalDocsExamined;
+	@SerializedName("total_quorum_docs_examined")
+	private long totalQuorumDocsExamined;
+	@SerializedName("results_returned")
+	private long resultsReturned;
+	@SerializedName("execution_time_ms")
+	private double executionTimeMs;
+
+	public long getTotalKeysExamined() {
+		return totalKeysExamined;
+	}
+
+	public long getTotalDocsExamined() {
+		return totalDocsExamined;
+	}
+
+	public long getTotalQuorumDocsExamined() {
+		return totalQuorumDocsExamined;
+	}
+
+	public long getResultsReturned() {
+		return resultsReturned;
+	}
+
+	public double getExecutionTimeMs() {
+		return executionTimeMs;
+	}
+
+	void add(ExecutionStats stats) {
+		totalKeysExamined += stats.totalKeysExamined;
+		totalDocsExamined += stats.totalDocsExamined;
+		totalQuorumDocsExamined += stats.totalQuorumDocsExamined;
+		resultsReturned += stats.resultsReturned;
+		executionTimeMs += stats.executionTimeMs;
+	}
+
+	@Override
+	public String toString() {
+		return "ExecutionStats [totalKeysExamined=" + totalKeysExamined + ", totalDocsExamined=" + totalDocsExamined 
+				+ ", totalQuorumDocsExamined=" + totalQuorumDocsExamined + ", resultsReturned=" + resultsReturned 
+				+ ", executionTimeMs=" + executionTimeMs + "]";
+	}
+}
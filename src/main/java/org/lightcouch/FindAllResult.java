@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the result of a multi-key document fetch, the documents found and the ids 
+ * that are missing or deleted.
+ * @param <T> Object type T
+ * @see CouchDbClientBase#findAll(Class, java.util.Collection)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class FindAllResult<T> {
+
+	private final Map<String, T> documents = new LinkedHashMap<String, T>();
+	private final List<String> missing = new ArrayList<String>();
+	private final List<String> deleted = new ArrayList<String>();
+
+	/**
+	 * @return The documents found by id, in the order of the requested ids.
+	 */
+	public Map<String, T> getDocuments() {
+		return Collections.unmodifiableMap(documents);
+	}
+
+	/**
+	 * @return The ids of documents that do not exist.
+	 */
+	public List<String> getMissing() {
+		return Collections.unmodifiableList(missing);
+	}
+
+	/**
+	 * @return The ids of documents that are deleted.
+	 */
+	public List<String> getDeleted() {
+		return Collections.unmodifiableList(deleted);
+	}
+
+	void add(FindAllResult<T> chunk) {
+		documents.putAll(chunk.documents);
+		missing.addAll(chunk.missing);
+		deleted.addAll(chunk.deleted);
+	}
+
+	void found(String id, T document) {
+		documents.put(id, document);
+	}
+
+	void missing(String id) {
+		missing.add(id);
+	}
+
+	void deleted(String id) {
+		deleted.add(id);
+	}
+
+	@Override
+	public String toString() {
+		return "FindAllResult [documents=" + documents.size() + ", missing=" + missing + ", deleted=" + deleted + "]";
+	}
+}
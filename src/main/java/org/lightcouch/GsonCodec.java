@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Type;
+
+import org.apache.commons.codec.Charsets;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * The default {@link JsonCodec}, streams documents through a {@link Gson} instance.
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class GsonCodec implements JsonCodec {
+
+	private final Gson gson;
+
+	public GsonCodec(Gson gson) {
+		this.gson = gson;
+	}
+
+	public Gson getGson() {
+		return gson;
+	}
+
+	public <T> T decode(InputStream in, Type type) throws IOException {
+		return gson.<T>fromJson(new InputStreamReader(in, Charsets.UTF_8), type);
+	}
+
+	public void encode(Object object, OutputStream out) throws IOException {
+		final JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, Charsets.UTF_8)));
+		gson.toJson(object, object.getClass(), writer);
+		writer.flush();
+	}
+}
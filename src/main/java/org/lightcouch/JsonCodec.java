@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+/**
+ * Encodes and decodes document bodies, as to use a JSON library other than Gson for the
+ * application's document classes.
+ * <p>The codec is used where a whole request or response body is a document: 
+ * {@link CouchDbClientBase#find(Class, String) find}, {@link CouchDbClientBase#save(Object) save}, 
+ * {@link CouchDbClientBase#update(Object) update}, {@link CouchDbClientBase#post(Object) post} and 
+ * {@link CouchDbClientBase#batch(Object) batch}. CouchDB's own responses, and documents embedded 
+ * in them such as view rows, are read with the client's {@link com.google.gson.Gson} instance, 
+ * as are Gson's own {@link com.google.gson.JsonElement} documents.
+ * <p>The default codec is {@link GsonCodec}. Implementations must be thread-safe.
+ * @see CouchDbClientBase#setJsonCodec(JsonCodec)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public interface JsonCodec {
+
+	/**
+	 * Decodes a UTF-8 JSON body.
+	 * @param in The body, closed by the caller.
+	 * @param type The type to decode to.
+	 * @return The decoded object.
+	 */
+	<T> T decode(InputStream in, Type type) throws IOException;
+
+	/**
+	 * Encodes an object as UTF-8 JSON.
+	 * @param object The object to encode, not <code>null</code>.
+	 * @param out The body, closed by the caller.
+	 */
+	void encode(Object object, OutputStream out) throws IOException;
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * A request body that serializes an object straight to the connection, with no intermediate
+ * JSON tree or String.
+ * <p>The body is sent with chunked transfer encoding; it is serialized again each time it is written.
+ * @see CouchDbClientBase#save(Object)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+class JsonEntity extends AbstractHttpEntity {
+
+	private final JsonCodec codec;
+	private final Object object;
+
+	JsonEntity(JsonCodec codec, Object object) {
+		this.codec = codec;
+		this.object = object;
+		setContentType("application/json");
+		setChunked(true);
+	}
+
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	public long getContentLength() {
+		return -1;
+	}
+
+	public boolean isStreaming() {
+		return false;
+	}
+
+	/**
+	 * Not supported, the body is produced by {@link #writeTo(OutputStream)}.
+	 */
+	public InputStream getContent() {
+		throw new UnsupportedOperationException("Streamed entity, use writeTo(OutputStream)");
+	}
+
+	public void writeTo(OutputStream outstream) throws IOException {
+		codec.encode(object, outstream); // the connection stream is closed by the caller
+	}
+}
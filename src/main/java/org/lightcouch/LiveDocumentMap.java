@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.lightcouch.ChangesResult.Row;
+
+/**
+ * An in-memory map of documents that is kept up to date by following the database changes feed.
+ * <p>{@link #start()} loads all documents passing the optional {@link #filter(String) filter},
+ * then a background thread applies the continuous changes feed to the map. Should the feed
+ * connection drop or stall, it is reopened from the last applied sequence.
+ * <p>Reads do not lock and never reach the database; a document read from the map is shared,
+ * and should be treated as read-only. Design documents are not included.
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * LiveDocumentMap&lt;Foo&gt; foos = dbClient.liveDocumentMap(Foo.class)
+ * 	.filter("example/filter")
+ * 	.start(); // blocks until loaded
+ *
+ * Foo foo = foos.get("doc-id");
+ *
+ * foos.close(); // stops following changes
+ * </pre>
+ * @param <T> The document type.
+ * @see Changes
+ * @see CouchDbClientBase#liveDocumentMap(Class)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class LiveDocumentMap<T> implements Closeable {
+	private static final Log log = LogFactory.getLog(LiveDocumentMap.class);
+
+	private static final String DESIGN_PREFIX = "_design/";
+
+	private final ConcurrentHashMap<String, T> documents = new ConcurrentHashMap<String, T>();
+	private final CouchDbClientBase dbc;
+	private final Class<T> classOfT;
+	private String filter;
+	private long heartBeat = 30000;
+	private long minReconnectDelay = 1000;
+	private long maxReconnectDelay = 60000;
+
+	private volatile String lastSeq = "0";
+	private volatile boolean closed;
+	private volatile Changes changes;
+	private Thread follower;
+
+	LiveDocumentMap(CouchDbClientBase dbc, Class<T> classOfT) {
+		CouchDbUtil.assertNotEmpty(classOfT, "Class");
+		this.dbc = dbc;
+		this.classOfT = classOfT;
+	}
+
+	// Options
+
+	/**
+	 * @param filter The filter function to select documents with, in the format: <code>designDoc/filter1</code>
+	 * @return {@link LiveDocumentMap}
+	 */
+	public LiveDocumentMap<T> filter(String filter) {
+		this.filter = filter;
+		return this;
+	}
+
+	/**
+	 * @param heartBeat The changes feed heartbeat in milliseconds, defaults to 30000.
+	 * @return {@link LiveDocumentMap}
+	 */
+	public LiveDocumentMap<T> heartBeat(long heartBeat) {
+		this.heartBeat = heartBeat;
+		return this;
+	}
+
+	/**
+	 * @param minDelay The delay in milliseconds before reopening a dropped changes feed, defaults to 1000.
+	 * @param maxDelay The maximum delay in milliseconds between reconnect attempts, defaults to 60000.
+	 * @return {@link LiveDocumentMap}
+	 * @see Changes#reconnect(long, long)
+	 */
+	public LiveDocumentMap<T> reconnect(long minDelay, long maxDelay) {
+		this.minReconnectDelay = minDelay;
+		this.maxReconnectDelay = maxDelay;
+		return this;
+	}
+
+	/**
+	 * Loads the documents, blocking until done, then follows changes in the background.
+	 * @return {@link LiveDocumentMap}
+	 */
+	public synchronized LiveDocumentMap<T> start() {
+		if(follower != null) {
+			throw new IllegalStateException("Already started.");
+		}
+		final StreamingIterator<Row> rows = changes("0").includeDocs(true).changesIterator();
+		try {
+			while (rows.hasNext()) {
+				apply(rows.next());
+			}
+		} finally {
+			rows.close();
+		}
+		follower = new Thread(new Runnable() {
+			public void run() {
+				follow();
+			}
+		}, "lightcouch-live-map");
+		follower.setDaemon(true);
+		follower.start();
+		return this;
+	}
+
+	/**
+	 * Stops following changes. The map keeps its current content.
+	 */
+	public void close() {
+		closed = true;
+		final Changes feed = changes;
+		if(feed != null) {
+			feed.stop();
+		}
+	}
+
+	// Reads
+
+	/**
+	 * @param id The document id.
+	 * @return The document, or {@code null} if not found.
+	 */
+	public T get(String id) {
+		return documents.get(id);
+	}
+
+	/**
+	 * @param id The document id.
+	 * @return true If the document is found.
+	 */
+	public boolean containsKey(String id) {
+		return documents.containsKey(id);
+	}
+
+	/**
+	 * @return The number of documents.
+	 */
+	public int size() {
+		return documents.size();
+	}
+
+	/**
+	 * @return A read-only, live view of the documents by id.
+	 */
+	public Map<String, T> asMap() {
+		return Collections.unmodifiableMap(documents);
+	}
+
+	/**
+	 * @return The sequence of the last applied change.
+	 */
+	public String getLastSeq() {
+		return lastSeq;
+	}
+
+	// Helpers
+
+	/**
+	 * Applies the continuous changes feed until closed.
+	 */
+	private void follow() {
+		final Changes feed = changes(lastSeq).includeDocs(true).heartBeat(heartBeat)
+				.reconnect(minReconnectDelay, maxReconnectDelay);
+		changes = feed;
+		if(closed) {
+			return;
+		}
+		try {
+			feed.continuousChanges();
+			while (feed.hasNext()) {
+				apply(feed.next());
+			}
+		} catch (CouchDbException e) {
+			log.error("Error applying changes, stopped at seq: " + lastSeq, e);
+		}
+	}
+
+	private Changes changes(String since) {
+		final Changes feed = dbc.changes().since(since);
+		if(filter != null) {
+			feed.filter(filter);
+		}
+		return feed;
+	}
+
+	private void apply(Row row) {
+		final String id = row.getId();
+		if(id != null && !id.startsWith(DESIGN_PREFIX)) {
+			if(row.isDeleted() || row.getDoc() == null) {
+				documents.remove(id);
+			} else {
+				documents.put(id, dbc.getGson().fromJson(row.getDoc(), classOfT));
+			}
+		}
+		lastSeq = row.getSeq();
+	}
+}
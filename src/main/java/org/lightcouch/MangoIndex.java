@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import com.google.gson.JsonObject;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Holds a Mango index definition, as listed by <tt>_index</tt> or chosen by <tt>_explain</tt>.
+ * @see MangoIndexes
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class MangoIndex {
+	static final String SPECIAL = "special";
+
+	@SerializedName("ddoc")
+	private String designDocId;
+	private String name;
+	private String type;
+	private JsonObject def;
+
+	/**
+	 * @return The design document id, or {@code null} for the <tt>_all_docs</tt> index.
+	 */
+	public String getDesignDocId() {
+		return designDocId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The index type: json, text or special.
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * @return The index definition, e.g. <tt>{"fields":[{"title":"asc"}]}</tt>.
+	 */
+	public JsonObject getDef() {
+		return def;
+	}
+
+	/**
+	 * @return true If this is the built-in <tt>_all_docs</tt> index, a query choosing it 
+	 * scans all documents unless the selector is on <tt>_id</tt>.
+	 */
+	public boolean isSpecial() {
+		return SPECIAL.equals(type);
+	}
+
+	@Override
+	public String toString() {
+		return "MangoIndex [designDocId=" + designDocId + ", name=" + name + ", type=" + type + ", def=" + def + "]";
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import static java.lang.String.format;
+import static org.lightcouch.CouchDbUtil.assertNotEmpty;
+import static org.lightcouch.CouchDbUtil.close;
+import static org.lightcouch.CouchDbUtil.getStream;
+import static org.lightcouch.CouchDbUtil.listResources;
+import static org.lightcouch.CouchDbUtil.readFile;
+import static org.lightcouch.URIBuilder.buildUri;
+
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.Charsets;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Provides API to work with Mango indexes, and to verify that queries are served by an index.
+ * <p>Index definitions on desk are read from the <tt>mango-indexes</tt> classpath folder, 
+ * one <tt>_index</tt> request body per <tt>.json</tt> file.
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * {@code
+ * // create an index
+ * dbClient.mangoIndexes().create("foo-index", "by-title", "title");
+ * 
+ * // at startup: sync from desk, then check the hot queries
+ * dbClient.mangoIndexes().synchronizeAllWithDb();
+ * dbClient.mangoIndexes()
+ * 	.register("foo-by-title", byTitle)
+ * 	.verify(true);
+ * }
+ * </pre>
+ * @see CouchDbClientBase#mangoIndexes()
+ * @see MangoQuery
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class MangoIndexes {
+
+	private static final String INDEXES_DIR   = "mango-indexes";
+	private static final String DESIGN_PREFIX = "_design/";
+
+	private final CouchDbClientBase dbc;
+	private final Map<String, MangoQuery> queries = new LinkedHashMap<String, MangoQuery>();
+
+	MangoIndexes(CouchDbClientBase dbc) {
+		this.dbc = dbc;
+	}
+
+	/**
+	 * Creates a json index on the given fields, in ascending order.
+	 * @param designDoc The design document, with or without the <tt>_design/</tt> prefix.
+	 * @param name The index name.
+	 * @param fields The indexed fields.
+	 * @return true If the index was created, false if it already exists.
+	 */
+	public boolean create(String designDoc, String name, String... fields) {
+		assertNotEmpty(designDoc, "designDoc");
+		assertNotEmpty(name, "name");
+		if(fields.length == 0) {
+			throw new IllegalArgumentException("fields may not be empty.");
+		}
+		final JsonArray array = new JsonArray();
+		for (String field : fields) {
+			array.add(new JsonPrimitive(field));
+		}
+		final JsonObject index = new JsonObject();
+		index.add("fields", array);
+		final JsonObject json = new JsonObject();
+		json.add("index", index);
+		json.addProperty("ddoc", stripPrefix(designDoc));
+		json.addProperty("name", name);
+		json.addProperty("type", "json");
+		return create(json.toString());
+	}
+
+	/**
+	 * Creates an index.
+	 * @param indexJson The <tt>_index</tt> request body, e.g. <tt>{"index":{"fields":["title"]},"name":"by-title"}</tt>
+	 * @return true If the index was created, false if it already exists.
+	 */
+	public boolean create(String indexJson) {
+		assertNotEmpty(indexJson, "indexJson");
+		HttpResponse response = null;
+		try {
+			response = dbc.post(buildUri(dbc.getDBUri()).path("_index").build(), indexJson);
+			final JsonObject result = dbc.getGson().fromJson(new InputStreamReader(getStream(response), Charsets.UTF_8), JsonObject.class);
+			return "created".equals(result.get("result").getAsString());
+		} finally {
+			close(response);
+		}
+	}
+
+	/**
+	 * @return All indexes of the database, including the special <tt>_all_docs</tt> index.
+	 */
+	public List<MangoIndex> list() {
+		final JsonObject result = dbc.get(buildUri(dbc.getDBUri()).path("_index").build(), JsonObject.class);
+		return dbc.getGson().fromJson(result.get("indexes"), new TypeToken<List<MangoIndex>>(){}.getType());
+	}
+
+	/**
+	 * Deletes a json index.
+	 * @param designDoc The design document, with or without the <tt>_design/</tt> prefix.
+	 * @param name The index name.
+	 * @throws NoDocumentException If the index is not found.
+	 */
+	public void delete(String designDoc, String name) {
+		assertNotEmpty(designDoc, "designDoc");
+		assertNotEmpty(name, "name");
+		final URI uri = buildUri(dbc.getDBUri()).path("_index/").pathEncoded(stripPrefix(designDoc))
+				.path("/json/").pathEncoded(name).build();
+		dbc.delete(uri);
+	}
+
+	/**
+	 * Creates the indexes on desk that do not exist in the database.
+	 * @see #getAllFromDesk()
+	 */
+	public void synchronizeAllWithDb() {
+		for (String indexJson : getAllFromDesk()) {
+			create(indexJson);
+		}
+	}
+
+	/**
+	 * @return The index definitions of the <tt>mango-indexes</tt> classpath folder.
+	 */
+	public List<String> getAllFromDesk() {
+		final List<String> indexes = new ArrayList<String>();
+		final List<String> files = listResources(format("%s/", INDEXES_DIR));
+		if(files != null) {
+			for (String file : files) {
+				if(file.endsWith(".json")) {
+					indexes.add(readFile(format("/%s/%s", INDEXES_DIR, file)));
+				}
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * Asks the database which index would serve a query.
+	 * @param query The {@link MangoQuery}, with all its parameters bound.
+	 * @return The {@link MangoIndex} the query would use.
+	 * @throws IllegalStateException If a parameter of the query is not bound.
+	 */
+	public MangoIndex explain(MangoQuery query) {
+		assertNotEmpty(query, "query");
+		HttpResponse response = null;
+		try {
+			final ByteArrayEntity entity = new ByteArrayEntity(query.toExplainBody(dbc.getGson()));
+			entity.setContentType("application/json");
+			response = dbc.post(buildUri(dbc.getDBUri()).path("_explain").build(), entity);
+			final JsonObject result = dbc.getGson().fromJson(new InputStreamReader(getStream(response), Charsets.UTF_8), JsonObject.class);
+			return dbc.getGson().fromJson(result.get("index"), MangoIndex.class);
+		} finally {
+			close(response);
+		}
+	}
+
+	/**
+	 * Registers a query to be checked by {@link #verify(boolean)}.
+	 * <p>The query parameters should be bound to sample values, as the database 
+	 * rejects operators such as <tt>$in</tt> or <tt>$regex</tt> without a valid argument.
+	 * @param name The query name, as reported.
+	 * @param query The {@link MangoQuery}, e.g. <code>query.with("tag", "sample")</code>.
+	 * @return {@link MangoIndexes}
+	 * @throws IllegalArgumentException If a parameter of the query is not bound.
+	 */
+	public synchronized MangoIndexes register(String name, MangoQuery query) {
+		assertNotEmpty(name, "name");
+		assertNotEmpty(query, "query");
+		final String unbound = query.getUnboundParam(dbc.getGson());
+		if(unbound != null) {
+			throw new IllegalArgumentException(format("Query '%s' has no sample value bound for parameter: %s", name, unbound));
+		}
+		queries.put(name, query);
+		return this;
+	}
+
+	/**
+	 * Explains the registered queries, and reports those that would use the special 
+	 * <tt>_all_docs</tt> index, i.e. scan all documents, with a warning.
+	 * @param failFast Whether to throw if any query is not served by an index.
+	 * @return The names of the queries not served by an index.
+	 * @throws CouchDbException If <code>failFast</code> is set and a query is not served by an index.
+	 */
+	public synchronized List<String> verify(boolean failFast) {
+		final List<String> scans = new ArrayList<String>();
+		for (Map.Entry<String, MangoQuery> entry : queries.entrySet()) {
+			if(explain(entry.getValue()).isSpecial()) {
+				CouchDbClientBase.log.warn(format("Query '%s' is not served by an index, it scans all documents.", entry.getKey()));
+				scans.add(entry.getKey());
+			}
+		}
+		if(failFast && !scans.isEmpty()) {
+			throw new CouchDbException(format("Queries not served by an index: %s", scans));
+		}
+		return scans;
+	}
+
+	private static String stripPrefix(String designDoc) {
+		return designDoc.startsWith(DESIGN_PREFIX) ? designDoc.substring(DESIGN_PREFIX.length()) : designDoc;
+	}
+}
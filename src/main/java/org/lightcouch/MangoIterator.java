@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import static org.lightcouch.CouchDbUtil.getStream;
+import static org.lightcouch.URIBuilder.buildUri;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import org.apache.commons.codec.Charsets;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Iterates over the documents of a Mango query, following the <tt>bookmark</tt> 
+ * from batch to batch.
+ * <p>Each batch is parsed as it streams in; the next batch is requested on the client's worker threads 
+ * as soon as the current one is received, at most two batches are held in memory. 
+ * {@link #close()} should be called if the iterator is not read to the end.
+ * @param <T> Object type T
+ * @see CouchDbClientBase#findStream(MangoQuery, Class)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class MangoIterator<T> implements Iterator<T>, Closeable {
+	private final CouchDbClientBase dbc;
+	private final MangoQuery query;
+	private final Class<T> classOfT;
+	private final URI uri;
+	private long remaining;
+	private Iterator<T> current;
+	private FutureTask<Batch<T>> pending;
+	private volatile HttpPost request; // of the batch being requested
+	private String bookmark;
+	private String warning;
+	private ExecutionStats stats;
+	private volatile boolean closed;
+
+	MangoIterator(CouchDbClientBase dbc, MangoQuery query, Class<T> classOfT) {
+		this.dbc = dbc;
+		this.query = query;
+		this.classOfT = classOfT;
+		this.uri = buildUri(dbc.getDBUri()).path("_find").build();
+		this.remaining = query.getLimit() != null ? query.getLimit() : Long.MAX_VALUE;
+		if(remaining > 0) {
+			this.pending = prefetch(null);
+		}
+	}
+
+	/**
+	 * @return true If another document is available, may wait for the next batch.
+	 */
+	public boolean hasNext() {
+		while (!closed) {
+			if(current != null && current.hasNext()) {
+				return true;
+			}
+			if(pending == null) {
+				return false;
+			}
+			final Batch<T> batch;
+			try {
+				batch = CouchDbClientBase.await(pending);
+			} catch (RuntimeException e) {
+				close();
+				throw e;
+			}
+			pending = null;
+			bookmark = batch.bookmark;
+			warning = batch.warning;
+			if(batch.stats != null) {
+				if(stats == null) {
+					stats = new ExecutionStats();
+				}
+				stats.add(batch.stats);
+			}
+			remaining -= batch.docs.size();
+			if(batch.docs.size() == batch.limit && remaining > 0 && bookmark != null) {
+				pending = prefetch(bookmark);
+			}
+			current = batch.docs.iterator();
+		}
+		return false;
+	}
+
+	/**
+	 * @return The next document.
+	 */
+	public T next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return current.next();
+	}
+
+	/**
+	 * Not supported.
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stops the iteration, a batch being requested is aborted.
+	 */
+	public void close() {
+		closed = true;
+		current = null;
+		final FutureTask<Batch<T>> p = pending;
+		pending = null;
+		if(p != null) {
+			p.cancel(false);
+		}
+		final HttpPost post = request;
+		if(post != null) {
+			post.abort();
+		}
+	}
+
+	/**
+	 * @return The <tt>bookmark</tt> of the last batch received, to resume the query later.
+	 */
+	public String getBookmark() {
+		return bookmark;
+	}
+
+	/**
+	 * @return The <tt>warning</tt> of the last batch received, e.g. when no index matches the query.
+	 */
+	public String getWarning() {
+		return warning;
+	}
+
+	/**
+	 * @return The {@link ExecutionStats} summed over the batches received, or {@code null} 
+	 * if not requested by {@link MangoQuery#executionStats(boolean)}.
+	 */
+	public ExecutionStats getExecutionStats() {
+		return stats;
+	}
+
+	private FutureTask<Batch<T>> prefetch(final String bookmark) {
+		final int limit = (int) Math.min(query.getBatchSize(), remaining);
+		return dbc.runInBackground(new Callable<Batch<T>>() {
+			public Batch<T> call() {
+				return find(bookmark, limit);
+			}
+		});
+	}
+
+	private Batch<T> find(String bookmark, int limit) {
+		HttpResponse response = null;
+		try {
+			final ByteArrayEntity entity = new ByteArrayEntity(query.toRequestBody(dbc.getGson(), limit, bookmark));
+			entity.setContentType("application/json");
+			final HttpPost post = new HttpPost(uri);
+			post.setEntity(entity);
+			request = post;
+			if(closed) { // lost a race with close()
+				post.abort();
+			}
+			response = dbc.executeRequest(post);
+			final JsonReader reader = new JsonReader(new InputStreamReader(getStream(response), Charsets.UTF_8));
+			final TypeAdapter<T> adapter = dbc.getGson().getAdapter(classOfT);
+			final Batch<T> batch = new Batch<T>(limit);
+			reader.beginObject();
+			while (reader.hasNext()) {
+				final String name = reader.nextName();
+				if("docs".equals(name)) {
+					reader.beginArray();
+					while (reader.hasNext()) {
+						batch.docs.add(adapter.read(reader));
+					}
+					reader.endArray();
+				} else if("bookmark".equals(name)) {
+					batch.bookmark = StreamingIterator.nextStringOrNull(reader);
+				} else if("warning".equals(name)) {
+					batch.warning = StreamingIterator.nextStringOrNull(reader);
+				} else if("execution_stats".equals(name)) {
+					batch.stats = dbc.getGson().fromJson(reader, ExecutionStats.class);
+				} else {
+					reader.skipValue();
+				}
+			}
+			return batch;
+		} catch (IOException e) {
+			throw new CouchDbException("Error reading response.", e);
+		} finally {
+			CouchDbUtil.close(response);
+		}
+	}
+
+	private static class Batch<T> {
+		final int limit;
+		final List<T> docs;
+		String bookmark;
+		String warning;
+		ExecutionStats stats;
+
+		Batch(int limit) {
+			this.limit = limit;
+			this.docs = new ArrayList<T>(limit);
+		}
+	}
+}
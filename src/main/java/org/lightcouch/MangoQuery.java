@@ -0,0 +1,506 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import static org.lightcouch.CouchDbUtil.assertNotEmpty;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * A Mango <tt>_find</tt> query.
+ * <p>The query is serialized once, on first execution, into a template of bytes with slots 
+ * for its parameters; executions only write the bound values and the paging fields. A configured 
+ * query may be shared by multiple threads, {@link #with(String, Object)} binds parameters on a copy.
+ * 
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * {@code
+ * MangoQuery byTag = new MangoQuery()
+ * 	.where("type", "foo")
+ * 	.where("tags", "$all", MangoQuery.param("tags"))
+ * 	.fields(FooSummary.class)
+ * 	.sort("title")
+ * 	.useIndex("foo-index");
+ * 
+ * MangoIterator<Foo> it = dbClient.findStream(byTag.with("tags", Arrays.asList("couchdb")), Foo.class);
+ * }
+ * </pre>
+ * @see CouchDbClientBase#findStream(MangoQuery, Class)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class MangoQuery {
+	static final int DEFAULT_BATCH_SIZE = 200;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String SLOT_START = "\u0001lightcouch:";
+	private static final String SLOT_END   = "\u0001";
+
+	private String selector;
+	private final List<Object[]> conditions; // field, operator or null, value
+	private final List<String> fields;
+	private Class<?> projection;
+	private final List<String[]> sort;       // field, direction
+	private String[] useIndex;
+	private boolean executionStats;
+	private Integer limit;
+	private Integer skip;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private final Map<String, Object> params;
+	private AtomicReference<Template> template = new AtomicReference<Template>();
+
+	public MangoQuery() {
+		this.conditions = new ArrayList<Object[]>();
+		this.fields = new ArrayList<String>();
+		this.sort = new ArrayList<String[]>();
+		this.params = new HashMap<String, Object>();
+	}
+
+	/**
+	 * A copy sharing the template of the given query.
+	 */
+	private MangoQuery(MangoQuery query) {
+		this.selector = query.selector;
+		this.conditions = new ArrayList<Object[]>(query.conditions);
+		this.fields = new ArrayList<String>(query.fields);
+		this.projection = query.projection;
+		this.sort = new ArrayList<String[]>(query.sort);
+		this.useIndex = query.useIndex;
+		this.executionStats = query.executionStats;
+		this.limit = query.limit;
+		this.skip = query.skip;
+		this.batchSize = query.batchSize;
+		this.params = new HashMap<String, Object>(query.params);
+		this.template = query.template;
+	}
+
+	/**
+	 * @param name The parameter name.
+	 * @return A parameter placeholder, for use as a value of {@link #where(String, String, Object)}.
+	 */
+	public static Param param(String name) {
+		assertNotEmpty(name, "name");
+		return new Param(name);
+	}
+
+	/**
+	 * @param selector The selector as JSON, conditions added by <code>where()</code> are merged in.
+	 * @return {@link MangoQuery}
+	 */
+	public MangoQuery selector(String selector) {
+		assertNotEmpty(selector, "selector");
+		this.selector = selector;
+		return changed();
+	}
+
+	/**
+	 * Adds an equality condition to the selector.
+	 * @param field The field name, nested fields are separated by dots.
+	 * @param value The value, or a {@link #param(String)}.
+	 * @return {@link MangoQuery}
+	 */
+	public MangoQuery where(String field, Object value) {
+		return where(field, null, value);
+	}
+
+	/**
+	 * Adds a condition to the selector, conditions on the same field are combined, 
+	 * an equality then becoming <tt>$eq</tt>.
+	 * @param field The field name, nested fields are separated by dots.
+	 * @param operator The operator, e.g. <tt>$gt</tt>, or {@code null} for equality.
+	 * @param value The value, or a {@link #param(String)}.
+	 * @return {@link MangoQuery}
+	 * @throws IllegalArgumentException If the field already has a condition with the same operator.
+	 */
+	public MangoQuery where(String field, String operator, Object value) {
+		assertNotEmpty(field, "field");
+		final String op = operator != null ? operator : "$eq";
+		for (Object[] condition : conditions) {
+			if(field.equals(condition[0]) && op.equals(condition[1] != null ? condition[1] : "$eq")) {
+				throw new IllegalArgumentException(String.format("Field %s already has a %s condition.", field, op));
+			}
+		}
+		conditions.add(new Object[] { field, operator, value });
+		return changed();
+	}
+
+	/**
+	 * @param fields The fields to return, all fields by default.
+	 * @return {@link MangoQuery}
+	 */
+	public MangoQuery fields(String... fields) {
+		for (String field : fields) {
+			assertNotEmpty(field, "field");
+			this.fields.add(field);
+		}
+		return changed();
+	}
+
+	/**
+	 * Returns only the fields of the given class, as to transfer and deserialize no more of 
+	 * the documents than the class holds.
+	 * <p>The field names are those of the serialized class, including inherited fields, 
+	 * by <code>@SerializedName</code> or the client's field naming policy; static and transient 
+	 * fields are left out. Nested fields are returned as a whole.
+	 * @param classOfT The class to project the documents on, e.g. a lightweight DTO.
+	 * @return {@link MangoQuery}
+	 */
+	public MangoQuery fields(Class<?> classOfT) {
+		assertNotEmpty(classOfT, "Class");
+		this.projection = classOfT;
+		return changed();
+	}
+
+	/**
+	 * Sorts by a field in ascending order.
+	 * @param field The field name.
+	 * @return {@link MangoQuery}
+	 */
+	public MangoQuery sort(String field) {
+		return sort(field, false);
+	}
+
+	/**
+	 * @param field The field name.
+	 * @param descending Whether to sort in descending order.
+	 * @return {@link MangoQuery}
+	 */
+	public MangoQuery sort(String field, boolean descending) {
+		assertNotEmpty(field, "field");
+		sort.add(new String[] { field, descending ? "desc" : "asc" });
+		return changed();
+	}
+
+	/**
+	 * @param designDoc The design document of the index to use.
+	 * @return {@link MangoQuery}
+	 */
+	public MangoQuery useIndex(String designDoc) {
+		assertNotEmpty(designDoc, "designDoc");
+		this.useIndex = new String[] { designDoc };
+		return changed();
+	}
+
+	/**
+	 * @param designDoc The design document of the index to use.
+	 * @param indexName The index name.
+	 * @return {@link MangoQuery}
+	 */
+	public MangoQuery useIndex(String designDoc, String indexName) {
+		assertNotEmpty(designDoc, "designDoc");
+		assertNotEmpty(indexName, "indexName");
+		this.useIndex = new String[] { designDoc, indexName };
+		return changed();
+	}
+
+	/**
+	 * @param executionStats Whether to return the {@link ExecutionStats} of the query.
+	 * @return {@link MangoQuery}
+	 */
+	public MangoQuery executionStats(boolean executionStats) {
+		this.executionStats = executionStats;
+		return changed();
+	}
+
+	/**
+	 * @param limit The maximum number of documents returned, over all batches.
+	 * @return {@link MangoQuery}
+	 */
+	public MangoQuery limit(int limit) {
+		this.limit = limit;
+		return this;
+	}
+
+	/**
+	 * @param skip Skips <i>n</i> number of documents.
+	 * @return {@link MangoQuery}
+	 */
+	public MangoQuery skip(int skip) {
+		this.skip = skip;
+		return this;
+	}
+
+	/**
+	 * @param batchSize The number of documents per request when following the <tt>bookmark</tt>, defaults to {@value #DEFAULT_BATCH_SIZE}.
+	 * @return {@link MangoQuery}
+	 */
+	public MangoQuery batchSize(int batchSize) {
+		if(batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be positive.");
+		}
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * Binds a parameter, this query is not modified.
+	 * @param name The parameter name.
+	 * @param value The value.
+	 * @return A copy of this query with the parameter bound.
+	 */
+	public MangoQuery with(String name, Object value) {
+		assertNotEmpty(name, "name");
+		final MangoQuery query = new MangoQuery(this);
+		query.params.put(name, value);
+		return query;
+	}
+
+	Integer getLimit() {
+		return limit;
+	}
+
+	int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @param limit The limit of this request.
+	 * @param bookmark The bookmark of the previous request, or {@code null} for the first request.
+	 * @return The request body.
+	 */
+	byte[] toRequestBody(Gson gson, int limit, String bookmark) {
+		return render(gson, limit, bookmark);
+	}
+
+	/**
+	 * @return The request body of an <tt>_explain</tt> of the first request.
+	 */
+	byte[] toExplainBody(Gson gson) {
+		return render(gson, limit != null ? Math.min(limit, batchSize) : batchSize, null);
+	}
+
+	/**
+	 * @return The name of the first parameter not bound, or {@code null} if all are bound.
+	 */
+	String getUnboundParam(Gson gson) {
+		for (String slot : template(gson).slots) {
+			if(!params.containsKey(slot)) {
+				return slot;
+			}
+		}
+		return null;
+	}
+
+	private byte[] render(Gson gson, int limit, String bookmark) {
+		final Template t = template(gson);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(t.length + 64);
+		for (int i = 0; i < t.slots.length; i++) {
+			if(!params.containsKey(t.slots[i])) {
+				throw new IllegalStateException("Parameter is not bound: " + t.slots[i]);
+			}
+			write(out, t.segments[i]);
+			write(out, gson.toJson(params.get(t.slots[i])).getBytes(UTF_8));
+		}
+		write(out, t.segments[t.slots.length]);
+		final StringBuilder tail = new StringBuilder(",\"limit\":").append(limit);
+		if(bookmark == null && skip != null) {
+			tail.append(",\"skip\":").append(skip);
+		}
+		if(bookmark != null) {
+			tail.append(",\"bookmark\":").append(gson.toJson(bookmark));
+		}
+		write(out, tail.append('}').toString().getBytes(UTF_8));
+		return out.toByteArray();
+	}
+
+	private Template template(Gson gson) {
+		Template t = template.get();
+		if(t == null || t.gson != gson) {
+			t = compile(gson);
+			template.set(t);
+		}
+		return t;
+	}
+
+	/**
+	 * Serializes the query, less the closing brace, and splits it at the parameter placeholders.
+	 */
+	private Template compile(Gson gson) {
+		final JsonObject json = new JsonObject();
+		final JsonObject sel = selector != null ? new JsonParser().parse(selector).getAsJsonObject() : new JsonObject();
+		for (Object[] condition : conditions) {
+			final String field = (String) condition[0];
+			final JsonElement value = condition[2] instanceof Param 
+					? new JsonPrimitive(SLOT_START + ((Param) condition[2]).name + SLOT_END) : gson.toJsonTree(condition[2]);
+			final JsonElement existing = sel.get(field);
+			if(existing == null) {
+				if(condition[1] == null) {
+					sel.add(field, value);
+				} else {
+					final JsonObject operators = new JsonObject();
+					operators.add((String) condition[1], value);
+					sel.add(field, operators);
+				}
+				continue;
+			}
+			final JsonObject operators;
+			if(isOperators(existing)) {
+				operators = existing.getAsJsonObject();
+			} else { // an equality
+				operators = new JsonObject();
+				operators.add("$eq", existing);
+			}
+			final String op = condition[1] != null ? (String) condition[1] : "$eq";
+			if(operators.has(op)) {
+				throw new IllegalArgumentException(String.format("Field %s already has a %s condition in the selector.", field, op));
+			}
+			operators.add(op, value);
+			sel.add(field, operators);
+		}
+		json.add("selector", sel);
+		final Set<String> names = new LinkedHashSet<String>(fields);
+		if(projection != null) {
+			names.addAll(fieldNames(gson, projection));
+		}
+		if(!names.isEmpty()) {
+			json.add("fields", gson.toJsonTree(names));
+		}
+		if(!sort.isEmpty()) {
+			final JsonArray array = new JsonArray();
+			for (String[] s : sort) {
+				final JsonObject order = new JsonObject();
+				order.addProperty(s[0], s[1]);
+				array.add(order);
+			}
+			json.add("sort", array);
+		}
+		if(useIndex != null) {
+			json.add("use_index", useIndex.length == 1 ? new JsonPrimitive(useIndex[0]) : gson.toJsonTree(useIndex));
+		}
+		if(executionStats) {
+			json.addProperty("execution_stats", true);
+		}
+		final String body = gson.toJson(json);
+		final String prefix = gson.toJson(SLOT_START);
+		final String open = prefix.substring(0, prefix.length() - 1);
+		final String close = gson.toJson(SLOT_END).substring(1);
+		final List<byte[]> segments = new ArrayList<byte[]>();
+		final List<String> slots = new ArrayList<String>();
+		int from = 0;
+		int start;
+		while ((start = body.indexOf(open, from)) != -1) {
+			final int end = body.indexOf(close, start + open.length());
+			segments.add(body.substring(from, start).getBytes(UTF_8));
+			slots.add(new JsonParser().parse('"' + body.substring(start + open.length(), end) + '"').getAsString());
+			from = end + close.length();
+		}
+		segments.add(body.substring(from, body.lastIndexOf('}')).getBytes(UTF_8));
+		return new Template(gson, segments.toArray(new byte[segments.size()][]), slots.toArray(new String[slots.size()]));
+	}
+
+	/**
+	 * @return Whether a selector value is an object of operators, rather than a value to equal.
+	 */
+	private static boolean isOperators(JsonElement value) {
+		if(!value.isJsonObject() || value.getAsJsonObject().entrySet().isEmpty()) {
+			return false;
+		}
+		for (Map.Entry<String, JsonElement> entry : value.getAsJsonObject().entrySet()) {
+			if(!entry.getKey().startsWith("$")) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The JSON names of the serialized fields of a class.
+	 */
+	private static List<String> fieldNames(Gson gson, Class<?> classOfT) {
+		final List<String> names = new ArrayList<String>();
+		for (Class<?> c = classOfT; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				final int modifiers = field.getModifiers();
+				if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+					continue;
+				}
+				final SerializedName serializedName = field.getAnnotation(SerializedName.class);
+				names.add(serializedName != null ? serializedName.value() : gson.fieldNamingStrategy().translateName(field));
+			}
+		}
+		return names;
+	}
+
+	private MangoQuery changed() {
+		template = new AtomicReference<Template>();
+		return this;
+	}
+
+	private static void write(ByteArrayOutputStream out, byte[] bytes) {
+		out.write(bytes, 0, bytes.length);
+	}
+
+	@Override
+	public String toString() {
+		return "MangoQuery [selector=" + selector + ", conditions=" + conditions.size() + ", fields=" + fields + ", projection=" + projection 
+				+ ", limit=" + limit + ", skip=" + skip + ", batchSize=" + batchSize + ", params=" + params.keySet() + "]";
+	}
+
+	/**
+	 * A parameter placeholder of a query, bound by {@link MangoQuery#with(String, Object)}.
+	 */
+	public static final class Param {
+		private final String name;
+
+		private Param(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return "Param [" + name + "]";
+		}
+	}
+
+	/**
+	 * The serialized query, split at the parameter slots.
+	 */
+	private static class Template {
+		final Gson gson;
+		final byte[][] segments;
+		final String[] slots;
+		final int length;
+
+		Template(Gson gson, byte[][] segments, String[] slots) {
+			this.gson = gson;
+			this.segments = segments;
+			this.slots = slots;
+			int length = 0;
+			for (byte[] segment : segments) {
+				length += segment.length;
+			}
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Measures a single HTTP request, reporting to a {@link CouchDbMetrics}.
+ * <p>Request and response bodies are wrapped to count their bytes as they are streamed.
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+class MeteredRequest {
+
+	/**
+	 * The {@link HttpContext} attribute holding the request measurement.
+	 */
+	static final String CONTEXT_ATTRIBUTE = "lightcouch.metered-request";
+
+	private final CouchDbMetrics metrics;
+	private final String operation;
+	private final long start = System.nanoTime();
+	private volatile long bytesSent;
+	private boolean recorded;
+
+	/**
+	 * Starts measuring a request, wrapping its body if any.
+	 */
+	MeteredRequest(CouchDbMetrics metrics, HttpRequest request, URI dbURI) {
+		this.metrics = metrics;
+		this.operation = operation(request, dbURI);
+		if(request instanceof HttpEntityEnclosingRequest) {
+			final HttpEntityEnclosingRequest enclosing = (HttpEntityEnclosingRequest) request;
+			if(enclosing.getEntity() != null) {
+				enclosing.setEntity(new CountingRequestEntity(enclosing.getEntity()));
+			}
+		}
+	}
+
+	/**
+	 * Records the response status, and wraps the response body to count the bytes read.
+	 * Called once the response headers are received, before validating the response.
+	 */
+	synchronized void completed(HttpResponse response) {
+		if(recorded) {
+			return;
+		}
+		recorded = true;
+		metrics.requestCompleted(operation, response.getStatusLine().getStatusCode(), System.nanoTime() - start, bytesSent);
+		if(response.getEntity() != null) {
+			response.setEntity(new CountingResponseEntity(response.getEntity()));
+		}
+	}
+
+	synchronized void failed() {
+		if(!recorded) {
+			recorded = true;
+			metrics.requestFailed(operation, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Records the response of the request measured within the given context, if any.
+	 */
+	static void completed(HttpResponse response, HttpContext context) {
+		final MeteredRequest metered = (MeteredRequest) context.getAttribute(CONTEXT_ATTRIBUTE);
+		if(metered != null) {
+			metered.completed(response);
+		}
+	}
+
+	/**
+	 * @return The operation name of a request, by its method and path.
+	 * @see CouchDbMetrics
+	 */
+	static String operation(HttpRequest request, URI dbURI) {
+		final String method = request.getRequestLine().getMethod();
+		String path = request.getRequestLine().getUri();
+		if(path.contains("://")) {
+			path = URI.create(path).getRawPath();
+		}
+		final int query = path.indexOf('?');
+		if(query != -1) {
+			path = path.substring(0, query);
+		}
+		if(!path.startsWith(dbURI.getRawPath())) {
+			return "server";
+		}
+		final String doc = path.substring(dbURI.getRawPath().length());
+		if(doc.startsWith("_bulk_docs")) {
+			return "bulk";
+		} else if(doc.startsWith("_changes")) {
+			return "changes";
+		} else if(doc.startsWith("_find")) {
+			return "query";
+		} else if(doc.startsWith("_all_docs") || (doc.startsWith("_design/") && doc.contains("/_view/"))) {
+			return "view";
+		} else if(doc.startsWith("_design/") ? doc.indexOf("/_", 8) != -1 
+				: doc.startsWith("_") && !doc.startsWith("_local/")) {
+			return "other"; // _compact, _index, show and update handlers etc.
+		} else if("GET".equals(method)) {
+			return "find";
+		} else if("HEAD".equals(method)) {
+			return "contains";
+		} else if("PUT".equals(method) || "POST".equals(method)) {
+			return "save";
+		} else if("DELETE".equals(method)) {
+			return "remove";
+		}
+		return "other";
+	}
+
+	/**
+	 * Counts the bytes written by the blocking client, or read by the non-blocking one.
+	 */
+	private class CountingRequestEntity extends HttpEntityWrapper {
+
+		CountingRequestEntity(HttpEntity entity) {
+			super(entity);
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			return new FilterInputStream(super.getContent()) {
+				@Override
+				public int read() throws IOException {
+					final int b = super.read();
+					if(b != -1) {
+						bytesSent++;
+					}
+					return b;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					final int n = super.read(b, off, len);
+					if(n != -1) {
+						bytesSent += n;
+					}
+					return n;
+				}
+			};
+		}
+
+		@Override
+		public void writeTo(OutputStream outstream) throws IOException {
+			super.writeTo(new FilterOutputStream(outstream) {
+				@Override
+				public void write(int b) throws IOException {
+					out.write(b);
+					bytesSent++;
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					out.write(b, off, len);
+					bytesSent += len;
+				}
+			});
+		}
+	}
+
+	private class CountingResponseEntity extends HttpEntityWrapper {
+		private InputStream content;
+
+		CountingResponseEntity(HttpEntity entity) {
+			super(entity);
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			if(content == null) {
+				content = new CountingInputStream(super.getContent());
+			}
+			return content;
+		}
+
+		@Override
+		public void writeTo(OutputStream outstream) throws IOException {
+			final InputStream in = getContent();
+			try {
+				final byte[] buffer = new byte[4096];
+				int n;
+				while ((n = in.read(buffer)) != -1) {
+					outstream.write(buffer, 0, n);
+				}
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Reports the bytes read once at end of stream or close. Aborting the connection
+	 * is passed on, as to not drain a large response.
+	 */
+	private class CountingInputStream extends FilterInputStream implements ConnectionReleaseTrigger {
+		private long count;
+		private boolean reported;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if(b == -1) {
+				report();
+			} else {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			final int n = super.read(b, off, len);
+			if(n == -1) {
+				report();
+			} else {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				report();
+			}
+		}
+
+		public void releaseConnection() throws IOException {
+			if(in instanceof ConnectionReleaseTrigger) {
+				((ConnectionReleaseTrigger) in).releaseConnection();
+			}
+		}
+
+		public void abortConnection() throws IOException {
+			if(in instanceof ConnectionReleaseTrigger) {
+				((ConnectionReleaseTrigger) in).abortConnection();
+			}
+			report();
+		}
+
+		private void report() {
+			if(!reported) {
+				reported = true;
+				metrics.bytesReceived(operation, count);
+			}
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import static org.lightcouch.CouchDbUtil.assertNotEmpty;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A binary attachment sent along with its document in a single <tt>multipart/related</tt> request, 
+ * without base64 encoding.
+ * <p>The data is read as it is sent, from a file, a buffer or a stream of known length.
+ * @see CouchDbClientBase#saveWithAttachments(Object, java.util.List)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class MultipartAttachment {
+
+	private final String name;
+	private final String contentType;
+	private final long length;
+	private final File file;
+	private final ByteBuffer buffer;
+	private InputStream in;
+
+	/**
+	 * @param name The attachment name.
+	 * @param contentType The attachment "Content-Type".
+	 * @param file The file holding the binary data.
+	 */
+	public MultipartAttachment(String name, String contentType, File file) {
+		this(name, contentType, file.length(), file, null, null);
+	}
+
+	/**
+	 * @param name The attachment name.
+	 * @param contentType The attachment "Content-Type".
+	 * @param buffer The buffer holding the binary data, its remaining bytes are sent.
+	 */
+	public MultipartAttachment(String name, String contentType, ByteBuffer buffer) {
+		this(name, contentType, buffer.remaining(), null, buffer, null);
+	}
+
+	/**
+	 * An attachment that can be sent only once.
+	 * @param name The attachment name.
+	 * @param contentType The attachment "Content-Type".
+	 * @param in The stream holding the binary data, closed after it is sent.
+	 * @param length The number of bytes of the stream.
+	 */
+	public MultipartAttachment(String name, String contentType, InputStream in, long length) {
+		this(name, contentType, length, null, null, in);
+	}
+
+	private MultipartAttachment(String name, String contentType, long length, File file, ByteBuffer buffer, InputStream in) {
+		assertNotEmpty(name, "name");
+		assertNotEmpty(contentType, "ContentType");
+		this.name = name;
+		this.contentType = contentType;
+		this.length = length;
+		this.file = file;
+		this.buffer = buffer;
+		this.in = in;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	boolean isRepeatable() {
+		return in == null;
+	}
+
+	void writeTo(OutputStream outstream) throws IOException {
+		if(buffer != null) {
+			ChannelEntity.transfer(buffer, outstream);
+		} else if(file != null) {
+			final FileChannel channel = new FileInputStream(file).getChannel();
+			try {
+				ChannelEntity.transfer(channel, 0, length, outstream);
+			} finally {
+				channel.close();
+			}
+		} else if(in != null) {
+			final InputStream source = in;
+			in = null;
+			try {
+				final byte[] b = new byte[8192];
+				long count = 0;
+				int n;
+				while ((n = source.read(b)) != -1) {
+					outstream.write(b, 0, n);
+					count += n;
+				}
+				if(count != length) {
+					throw new IOException(String.format("Attachment %s has %s bytes, expected %s.", name, count, length));
+				}
+			} finally {
+				source.close();
+			}
+		} else {
+			throw new IllegalStateException("Attachment stream has already been sent.");
+		}
+	}
+}
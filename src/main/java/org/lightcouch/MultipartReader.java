@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.codec.Charsets;
+
+/**
+ * Reads the parts of a <tt>multipart/related</tt> body one after the other, each part is 
+ * streamed through a fixed size buffer.
+ * @see CouchDbClientBase#findWithAttachments(Class, String, AttachmentHandler)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+class MultipartReader {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final InputStream in;
+	private final byte[] delimiter;
+	private final byte[] buffer;
+	private int pos;
+	private int limit;
+	private boolean eof;
+	private PartInputStream part;
+	private boolean done;
+
+	/**
+	 * @param in The body, positioned at the first boundary.
+	 * @param boundary The boundary parameter of the body "Content-Type".
+	 */
+	MultipartReader(InputStream in, String boundary) {
+		this.in = in;
+		this.delimiter = ("\r\n--" + boundary).getBytes(Charsets.UTF_8);
+		this.buffer = new byte[BUFFER_SIZE + delimiter.length];
+		// the first boundary has no leading line break
+		buffer[0] = '\r';
+		buffer[1] = '\n';
+		limit = 2;
+		part = new PartInputStream(); // the preamble
+	}
+
+	/**
+	 * @return The boundary parameter of a "Content-Type" header value, or <code>null</code>.
+	 */
+	static String boundary(String contentType) {
+		for (String param : contentType.split(";")) {
+			final String[] pair = param.trim().split("=", 2);
+			if(pair.length == 2 && "boundary".equalsIgnoreCase(pair[0].trim())) {
+				final String value = pair[1].trim();
+				return value.startsWith("\"") ? value.substring(1, value.length() - 1) : value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Skips the rest of the current part, then reads the headers of the next.
+	 * @param headers Receives the part headers, with lower case names.
+	 * @return The part body, or <code>null</code> after the last part.
+	 */
+	InputStream nextPart(Map<String, String> headers) throws IOException {
+		if(done) {
+			return null;
+		}
+		part.skipAll();
+		pos += delimiter.length;
+		if(!fill(2)) {
+			throw new IOException("Multipart body ended unexpectedly.");
+		}
+		if(buffer[pos] == '-' && buffer[pos + 1] == '-') {
+			done = true;
+			return null;
+		}
+		readLine(); // the rest of the boundary line
+		String line;
+		while ((line = readLine()).length() != 0) {
+			final int colon = line.indexOf(':');
+			if(colon != -1) {
+				headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ENGLISH), line.substring(colon + 1).trim());
+			}
+		}
+		part = new PartInputStream();
+		return part;
+	}
+
+	private String readLine() throws IOException {
+		final StringBuilder line = new StringBuilder();
+		while (true) {
+			if(!fill(1)) {
+				throw new IOException("Multipart body ended unexpectedly.");
+			}
+			final byte b = buffer[pos++];
+			if(b == '\n') {
+				final int len = line.length();
+				return len > 0 && line.charAt(len - 1) == '\r' ? line.substring(0, len - 1) : line.toString();
+			}
+			line.append((char) (b & 0xff));
+		}
+	}
+
+	/**
+	 * Reads until at least <code>count</code> bytes are buffered, or the end of the body.
+	 * @return <code>true</code> if <code>count</code> bytes are buffered.
+	 */
+	private boolean fill(int count) throws IOException {
+		if(limit - pos >= count) {
+			return true;
+		}
+		if(pos > 0) {
+			System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+		}
+		while (!eof && limit < count) {
+			final int n = in.read(buffer, limit, buffer.length - limit);
+			if(n == -1) {
+				eof = true;
+			} else {
+				limit += n;
+			}
+		}
+		return limit - pos >= count;
+	}
+
+	/**
+	 * @return The index of the delimiter in the buffered bytes, or <code>-1</code>.
+	 */
+	private int indexOfDelimiter() {
+		outer: for (int i = pos; i <= limit - delimiter.length; i++) {
+			for (int j = 0; j < delimiter.length; j++) {
+				if(buffer[i + j] != delimiter[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * The body of a part, ends at the next delimiter.
+	 */
+	private class PartInputStream extends InputStream {
+		private boolean ended;
+
+		@Override
+		public int read() throws IOException {
+			final byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(ended || part != this) {
+				return -1;
+			}
+			if(len == 0) {
+				return 0;
+			}
+			// buffer enough bytes to find a delimiter, or to tell some bytes are not part of one
+			fill(Math.min(delimiter.length + len, buffer.length));
+			final int index = indexOfDelimiter();
+			int available;
+			if(index != -1) {
+				available = index - pos;
+			} else if(eof) {
+				throw new IOException("Multipart body ended unexpectedly.");
+			} else {
+				available = limit - pos - delimiter.length + 1;
+			}
+			if(available == 0 && index == pos) {
+				ended = true;
+				return -1;
+			}
+			final int n = Math.min(len, available);
+			System.arraycopy(buffer, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		void skipAll() throws IOException {
+			final byte[] skip = new byte[4096];
+			while (read(skip, 0, skip.length) != -1);
+		}
+	}
+}
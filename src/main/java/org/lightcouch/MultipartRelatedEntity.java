@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.commons.codec.Charsets;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * A <tt>multipart/related</tt> request body of a document JSON followed by its binary attachments, 
+ * written to the connection part by part.
+ * <p>The attachments must be listed in the document <code>_attachments</code> with <code>"follows": true</code>,
+ * in the same order.
+ * @see CouchDbClientBase#saveWithAttachments(Object, List)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+class MultipartRelatedEntity extends AbstractHttpEntity {
+
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	private final byte[] json;
+	private final List<MultipartAttachment> attachments;
+	private final String boundary;
+	private final long length;
+
+	MultipartRelatedEntity(String json, List<MultipartAttachment> attachments) {
+		this.json = json.getBytes(Charsets.UTF_8);
+		this.attachments = attachments;
+		this.boundary = CouchDbUtil.generateUUID();
+		setContentType("multipart/related; boundary=\"" + boundary + "\"");
+		long len = header("application/json").length + this.json.length;
+		for (MultipartAttachment attachment : attachments) {
+			len += CRLF.length + header(attachment.getContentType()).length + attachment.getLength();
+		}
+		this.length = len + CRLF.length + trailer().length;
+	}
+
+	public boolean isRepeatable() {
+		for (MultipartAttachment attachment : attachments) {
+			if(!attachment.isRepeatable()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public long getContentLength() {
+		return length;
+	}
+
+	public boolean isStreaming() {
+		return false;
+	}
+
+	/**
+	 * Not supported, the body is produced by {@link #writeTo(OutputStream)}.
+	 */
+	public InputStream getContent() {
+		throw new UnsupportedOperationException("Streamed entity, use writeTo(OutputStream)");
+	}
+
+	public void writeTo(OutputStream outstream) throws IOException {
+		outstream.write(header("application/json"));
+		outstream.write(json);
+		for (MultipartAttachment attachment : attachments) {
+			outstream.write(CRLF);
+			outstream.write(header(attachment.getContentType()));
+			attachment.writeTo(outstream);
+		}
+		outstream.write(CRLF);
+		outstream.write(trailer());
+		outstream.flush(); // the connection stream is closed by the caller
+	}
+
+	private byte[] header(String contentType) {
+		return ("--" + boundary + "\r\nContent-Type: " + contentType + "\r\n\r\n").getBytes(Charsets.UTF_8);
+	}
+
+	private byte[] trailer() {
+		return ("--" + boundary + "--").getBytes(Charsets.UTF_8);
+	}
+}
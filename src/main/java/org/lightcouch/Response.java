@@ -54,6 +54,20 @@ public class Response {
 	public String getReason() {
 		return reason;
 	}
+	
+	/**
+	 * @return The failure of a bulk request entry as an exception, {@link DocumentConflictException}
+	 * for a conflict and {@link CouchDbException} for any other error, or {@code null} if the entry succeeded.
+	 */
+	public CouchDbException getException() {
+		if(error == null) {
+			return null;
+		}
+		if("conflict".equals(error)) {
+			return new DocumentConflictException(reason);
+		}
+		return new CouchDbException(error + ": " + reason);
+	}
 
 	/**
 	 * @return <tt>id</tt> and <tt>rev</tt> concatenated.
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps request measurements in memory, per operation.
+ * <p>Latencies are counted in a histogram of power of two buckets, hence percentiles
+ * are approximate: within a factor of two of the actual value.
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * SimpleCouchDbMetrics metrics = new SimpleCouchDbMetrics();
+ * dbClient.setMetrics(metrics);
+ *
+ * SimpleCouchDbMetrics.OperationStats find = metrics.getStats("find");
+ * long count = find.getCount();
+ * long p99 = find.getPercentile(0.99, TimeUnit.MILLISECONDS);
+ * </pre>
+ * @see CouchDbMetrics
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class SimpleCouchDbMetrics implements CouchDbMetrics {
+
+	private final ConcurrentMap<String, OperationStats> operations = new ConcurrentHashMap<String, OperationStats>();
+
+	public void requestCompleted(String operation, int statusCode, long durationNanos, long bytesSent) {
+		final OperationStats stats = stats(operation);
+		stats.record(durationNanos);
+		stats.bytesSent.addAndGet(bytesSent);
+		AtomicLong count = stats.statusCodes.get(statusCode);
+		if(count == null) {
+			final AtomicLong existing = stats.statusCodes.putIfAbsent(statusCode, count = new AtomicLong());
+			if(existing != null) {
+				count = existing;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	public void requestFailed(String operation, long durationNanos) {
+		final OperationStats stats = stats(operation);
+		stats.record(durationNanos);
+		stats.failures.incrementAndGet();
+	}
+
+	public void bytesReceived(String operation, long bytes) {
+		stats(operation).bytesReceived.addAndGet(bytes);
+	}
+
+	public void retried(String operation) {
+		stats(operation).retries.incrementAndGet();
+	}
+
+	/**
+	 * @return The names of the operations measured so far.
+	 */
+	public Set<String> getOperations() {
+		return Collections.unmodifiableSet(operations.keySet());
+	}
+
+	/**
+	 * @param operation The operation name.
+	 * @return The measurements of an operation, empty if not measured yet.
+	 */
+	public OperationStats getStats(String operation) {
+		return stats(operation);
+	}
+
+	/**
+	 * Discards all measurements.
+	 */
+	public void reset() {
+		operations.clear();
+	}
+
+	private OperationStats stats(String operation) {
+		OperationStats stats = operations.get(operation);
+		if(stats == null) {
+			final OperationStats existing = operations.putIfAbsent(operation, stats = new OperationStats());
+			if(existing != null) {
+				stats = existing;
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * The measurements of a single operation.
+	 */
+	public static class OperationStats {
+		private static final int BUCKETS = 64;
+
+		private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong retries = new AtomicLong();
+		private final AtomicLong bytesSent = new AtomicLong();
+		private final AtomicLong bytesReceived = new AtomicLong();
+		private final ConcurrentMap<Integer, AtomicLong> statusCodes = new ConcurrentHashMap<Integer, AtomicLong>();
+
+		OperationStats() {}
+
+		void record(long nanos) {
+			histogram.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+			count.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			long max;
+			while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos));
+		}
+
+		/**
+		 * @return The number of requests, including failed ones.
+		 */
+		public long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * @return The number of requests that failed without a response.
+		 */
+		public long getFailures() {
+			return failures.get();
+		}
+
+		/**
+		 * @return The number of retries.
+		 */
+		public long getRetries() {
+			return retries.get();
+		}
+
+		/**
+		 * @return The number of request body bytes sent.
+		 */
+		public long getBytesSent() {
+			return bytesSent.get();
+		}
+
+		/**
+		 * @return The number of response body bytes received.
+		 */
+		public long getBytesReceived() {
+			return bytesReceived.get();
+		}
+
+		/**
+		 * @return The number of responses by status code.
+		 */
+		public Map<Integer, Long> getStatusCodes() {
+			final Map<Integer, Long> codes = new TreeMap<Integer, Long>();
+			for (Map.Entry<Integer, AtomicLong> entry : statusCodes.entrySet()) {
+				codes.put(entry.getKey(), entry.getValue().get());
+			}
+			return codes;
+		}
+
+		/**
+		 * @param unit The time unit to return.
+		 * @return The mean latency.
+		 */
+		public long getMean(TimeUnit unit) {
+			final long n = count.get();
+			return n == 0 ? 0 : unit.convert(totalNanos.get() / n, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * @param unit The time unit to return.
+		 * @return The maximum latency.
+		 */
+		public long getMax(TimeUnit unit) {
+			return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * @param percentile The percentile, between 0 and 1, eg. 0.99
+		 * @param unit The time unit to return.
+		 * @return The upper bound of the histogram bucket holding the percentile.
+		 */
+		public long getPercentile(double percentile, TimeUnit unit) {
+			if(percentile < 0 || percentile > 1) {
+				throw new IllegalArgumentException("percentile should be between 0 and 1.");
+			}
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				total += histogram.get(i);
+			}
+			final long rank = (long) Math.ceil(percentile * total);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += histogram.get(i);
+				if(seen >= rank && seen > 0) {
+					final long upper = i >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+					return unit.convert(Math.min(upper, maxNanos.get()), TimeUnit.NANOSECONDS);
+				}
+			}
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.codec.Charsets;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * A lazy iterator over the entries of a JSON array within a response stream.
+ * <p>Entries are parsed one at a time as they are requested, the response is never
+ * held in memory as a whole. The underlying stream is closed once the array is exhausted,
+ * otherwise {@link #close()} must be called to release the connection.
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * StreamingIterator&lt;Foo&gt; it = dbClient.view("example/foo").includeDocs(true).queryIterator(Foo.class);
+ * try {
+ * 	while (it.hasNext()) {
+ * 		Foo foo = it.next();
+ * 	}
+ * } finally {
+ * 	it.close();
+ * }
+ * </pre>
+ * @param <T> The type of the entries.
+ * @see View#queryIterator(Class)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public abstract class StreamingIterator<T> implements Iterator<T>, Closeable {
+
+	private final InputStream instream;
+	private final JsonReader reader;
+	private boolean started;
+	private boolean exhausted;
+	private boolean closed;
+
+	StreamingIterator(InputStream instream) {
+		this.instream = instream;
+		this.reader = new JsonReader(new InputStreamReader(instream, Charsets.UTF_8));
+	}
+
+	/**
+	 * Positions the reader at the first entry of the array, called once before the first entry is read.
+	 * <p>Implementations should consume all tokens up to and including the opening of the array.
+	 * @param reader The {@link JsonReader} over the response.
+	 */
+	abstract void readHeader(JsonReader reader) throws IOException;
+
+	/**
+	 * Reads a single array entry.
+	 * @param reader The {@link JsonReader} positioned at the start of an entry.
+	 * @return The entry.
+	 */
+	abstract T readEntry(JsonReader reader) throws IOException;
+
+	/**
+	 * Reads what follows the array, called once after the last entry has been read.
+	 * <p>The default implementation does nothing, the remainder of the response is discarded.
+	 * @param reader The {@link JsonReader} positioned past the end of the array.
+	 */
+	void readTrailer(JsonReader reader) throws IOException {
+		// nothing of interest by default
+	}
+
+	/**
+	 * @return true If another entry is available in the stream.
+	 */
+	public boolean hasNext() {
+		if(closed) {
+			return false;
+		}
+		try {
+			if(!started) {
+				started = true;
+				readHeader(reader);
+			}
+			if(reader.hasNext()) {
+				return true;
+			}
+			reader.endArray();
+			readTrailer(reader);
+			exhausted = true;
+		} catch (IOException e) {
+			close();
+			throw new CouchDbException("Error reading response stream.", e);
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+		close();
+		return false;
+	}
+
+	/**
+	 * @return The next entry in the stream.
+	 */
+	public T next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		try {
+			return readEntry(reader);
+		} catch (IOException e) {
+			close();
+			throw new CouchDbException("Error reading response stream.", e);
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Not supported, the iterator is read-only.
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException("remove");
+	}
+
+	/**
+	 * Closes the response stream, releasing the connection. Safe to call more than once.
+	 * <p>If the stream is closed before it is exhausted, the connection is aborted rather
+	 * than drained, as the remainder of a large response may be arbitrarily long.
+	 */
+	public void close() {
+		if(!closed) {
+			closed = true;
+			if(!exhausted && instream instanceof ConnectionReleaseTrigger) {
+				try {
+					((ConnectionReleaseTrigger) instream).abortConnection();
+				} catch (IOException e) {
+					// ignore, closing below
+				}
+			}
+			CouchDbUtil.close(reader);
+			CouchDbUtil.close(instream);
+		}
+	}
+
+	/**
+	 * Skips the fields of the current object until the given field name is found.
+	 * @return true If the field was found, false if the end of the object was reached.
+	 */
+	static boolean seekField(JsonReader reader, String name) throws IOException {
+		while(reader.hasNext()) {
+			if(name.equals(reader.nextName())) {
+				return true;
+			}
+			reader.skipValue();
+		}
+		return false;
+	}
+
+	/**
+	 * @return The next value as String, or {@code null} if the value is a JSON null.
+	 */
+	static String nextStringOrNull(JsonReader reader) throws IOException {
+		if(reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		}
+		return reader.nextString();
+	}
+}
@@ -18,13 +18,18 @@ package org.lightcouch;
 
 import static org.lightcouch.CouchDbUtil.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.Reader;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.codec.Charsets;
 import org.apache.commons.codec.binary.Base64;
@@ -32,10 +37,11 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 /**
  * This class provides access to the <tt>View</tt> APIs.
@@ -55,8 +61,12 @@ import com.google.gson.JsonParser;
  * 	.key("couchdb")
  * 	.queryForInt(); 
  * 
- * // pagination
- * Page<Foo> page = dbClient.view("example/foo").queryPage(...);
+ * // keyset pagination
+ * ViewPager<String, Object, Foo> pager = dbClient.view("example/foo").pager(20, String.class, Object.class, Foo.class);
+ * ViewPage<String, Object, Foo> page = pager.page(cursor);
+ * 
+ * // streaming, rows are read lazily
+ * StreamingIterator<Foo> it = dbClient.view("example/foo").includeDocs(true).queryIterator(Foo.class);
  * }
  * </pre>
  * 
@@ -78,6 +88,8 @@ public class View {
 	private static final String NEXT                     = "n";
 	private static final String PREVIOUS                 = "p";
 	
+	private static final byte CURSOR_VERSION = 1;
+	
 	// view fields
 	private String key;
 	private String startKey;
@@ -97,21 +109,58 @@ public class View {
 	
 	private CouchDbClientBase dbc;
 	private Gson gson;
+	private URI viewURI;
 	private URIBuilder uriBuilder;
 	
 	private String allDocsKeys; // bulk docs
 	
 	View(CouchDbClientBase dbc, String viewId) {
+		this(dbc, dbc.getGson(), dbc.getDBUri(), viewId);
+	}
+	
+	/**
+	 * A view that is not bound to a synchronous client, executed by {@link CouchDbClientAsync}.
+	 */
+	View(Gson gson, URI dbURI, String viewId) {
+		this(null, gson, dbURI, viewId);
+	}
+	
+	private View(CouchDbClientBase dbc, Gson gson, URI dbURI, String viewId) {
 		assertNotEmpty(viewId, "View id");
 		this.dbc = dbc;
-		this.gson = dbc.getGson();
+		this.gson = gson;
 		
 		String view = viewId;
 		if(viewId.contains("/")) {
 			String[] v = viewId.split("/");
 			view = String.format("_design/%s/_view/%s", v[0], v[1]);
 		}
-		this.uriBuilder = URIBuilder.buildUri(dbc.getDBUri()).path(view);
+		this.uriBuilder = URIBuilder.buildUri(dbURI).path(view);
+		this.viewURI = uriBuilder.build();
+	}
+	
+	/**
+	 * A copy of the query options of a view, not to be modified.
+	 * @see #pager(int, Class, Class, Class)
+	 */
+	private View(View view, boolean includeDocs) {
+		this.dbc = view.dbc;
+		this.gson = view.gson;
+		this.viewURI = view.viewURI;
+		this.uriBuilder = URIBuilder.buildUri(viewURI);
+		this.key = view.key;
+		this.startKey = view.startKey;
+		this.startKeyDocId = view.startKeyDocId;
+		this.endKey = view.endKey;
+		this.endKeyDocId = view.endKeyDocId;
+		this.stale = view.stale;
+		this.descending = view.descending;
+		this.group = view.group;
+		this.groupLevel = view.groupLevel;
+		this.reduce = view.reduce;
+		this.includeDocs = includeDocs;
+		this.inclusiveEnd = view.inclusiveEnd;
+		this.updateSeq = view.updateSeq;
 	}
 	
 	// Query options
@@ -122,6 +171,9 @@ public class View {
 	 * @return The result as an {@link InputStream}.
 	 */
 	public InputStream queryForStream() {
+		if(dbc == null) {
+			throw new IllegalStateException("This view is executed by CouchDbClientAsync#query()");
+		}
 		URI uri = uriBuilder.build();
 		if(allDocsKeys != null) { // bulk docs
 			return getStream(dbc.post(uri, allDocsKeys));
@@ -137,26 +189,224 @@ public class View {
 	 * @return The result of the view query as a {@code List<T> }
 	 */
 	public <T> List<T> query(Class<T> classOfT) {
-		InputStream instream = null;
-		try {  
-			Reader reader = new InputStreamReader(instream = queryForStream(), Charsets.UTF_8);
-			JsonArray jsonArray = new JsonParser().parse(reader)
-					.getAsJsonObject().getAsJsonArray("rows");
+		final StreamingIterator<T> iterator = queryIterator(classOfT);
+		try {
 			List<T> list = new ArrayList<T>();
-			for (JsonElement jsonElem : jsonArray) {
-				JsonElement elem = jsonElem.getAsJsonObject();
-				if(Boolean.TRUE.equals(this.includeDocs)) {
-					elem = jsonElem.getAsJsonObject().get("doc");
-				}
-				T t = this.gson.fromJson(elem, classOfT);
-				list.add(t);
+			while (iterator.hasNext()) {
+				list.add(iterator.next());
 			}
 			return list;
 		} finally {
-			close(instream);
+			iterator.close();
 		}
 	}
+	
+	/**
+	 * Queries a view, returning the result rows lazily as they are read from the response stream.
+	 * <p>Rows are deserialized one at a time, memory use is independent of the size of the result.
+	 * The iterator should be closed if not read to the end, as to avoid connection leaks.
+	 * @param <T> Object type T
+	 * @param classOfT The class of type T
+	 * @return A {@link StreamingIterator} over the result of the view query.
+	 * @see #query(Class)
+	 */
+	public <T> StreamingIterator<T> queryIterator(Class<T> classOfT) {
+		return queryIterator(queryForStream(), classOfT);
+	}
+	
+	/**
+	 * Streams the view rows of the given response stream.
+	 */
+	<T> StreamingIterator<T> queryIterator(InputStream instream, final Class<T> classOfT) {
+		final boolean docs = Boolean.TRUE.equals(this.includeDocs);
+		return new StreamingIterator<T>(instream) {
+			@Override
+			void readHeader(JsonReader reader) throws IOException {
+				readViewHeader(reader, null);
+			}
+			
+			@Override
+			T readEntry(JsonReader reader) throws IOException {
+				if(!docs) {
+					return gson.fromJson(reader, classOfT);
+				}
+				T doc = null;
+				reader.beginObject();
+				while (reader.hasNext()) {
+					if("doc".equals(reader.nextName())) {
+						doc = gson.fromJson(reader, classOfT);
+					} else {
+						reader.skipValue();
+					}
+				}
+				reader.endObject();
+				return doc;
+			}
+		};
+	}
 
+	/**
+	 * Scans the view over key sub-ranges read concurrently, and returns the rows in view order.
+	 * @param <T> Object type T
+	 * @param partitions The number of key sub-ranges.
+	 * @param classOfT The class of type T
+	 * @return The result of the view query as a {@code List<T> }
+	 * @see #parallelScan(int, Class, ViewRowHandler)
+	 */
+	public <T> List<T> parallelScan(int partitions, Class<T> classOfT) {
+		final List<T> list = new ArrayList<T>();
+		for (List<T> rows : scan(partitions, classOfT, null)) {
+			list.addAll(rows);
+		}
+		return list;
+	}
+	
+	/**
+	 * Scans the view over key sub-ranges read concurrently, passing the rows to a handler.
+	 * <p>The key space within the <tt>startkey</tt> and <tt>endkey</tt> of the view is sampled by 
+	 * <tt>skip</tt>, then split at the sampled keys and document ids; ranges are read over the 
+	 * connection pool, up to the maximum number of connections, and rows are streamed to the handler 
+	 * as they are read. The <tt>key</tt>, <tt>keys</tt>, <tt>limit</tt> and <tt>skip</tt> options 
+	 * are not supported, a reduced view should be scanned with {@code reduce(false)}.
+	 * @param <T> Object type T
+	 * @param partitions The number of key sub-ranges.
+	 * @param classOfT The class of type T
+	 * @param handler The {@link ViewRowHandler}, called concurrently.
+	 */
+	public <T> void parallelScan(int partitions, Class<T> classOfT, ViewRowHandler<T> handler) {
+		assertNotEmpty(handler, "handler");
+		scan(partitions, classOfT, handler);
+	}
+	
+	private <T> List<List<T>> scan(int partitions, final Class<T> classOfT, final ViewRowHandler<T> handler) {
+		assertNotEmpty(classOfT, "Class");
+		if(partitions < 1) {
+			throw new IllegalArgumentException("partitions must be positive.");
+		}
+		if(dbc == null) {
+			throw new IllegalStateException("This view is executed by CouchDbClientAsync#query()");
+		}
+		if(key != null || allDocsKeys != null || limit != null || skip != null) {
+			throw new IllegalStateException("key, keys, limit and skip are not supported by a scan.");
+		}
+		final List<String[]> bounds = sampleBounds(partitions);
+		final List<Callable<List<T>>> tasks = new ArrayList<Callable<List<T>>>(bounds.size() + 1);
+		for (int i = 0; i <= bounds.size(); i++) {
+			final String[] from = i == 0 ? new String[] { startKey, startKeyDocId } : bounds.get(i - 1);
+			final URIBuilder range = rangeUri(from[0], from[1]);
+			if(i < bounds.size()) {
+				range.query("endkey", bounds.get(i)[0]).query("endkey_docid", bounds.get(i)[1]).query("inclusive_end", false);
+			} else {
+				range.query("endkey", endKey).query("endkey_docid", endKeyDocId).query("inclusive_end", inclusiveEnd);
+			}
+			tasks.add(new Callable<List<T>>() {
+				public List<T> call() {
+					final List<T> rows = new ArrayList<T>();
+					final StreamingIterator<T> iterator = queryIterator(dbc.get(range.build()), classOfT);
+					try {
+						while (iterator.hasNext()) {
+							if(handler != null) {
+								handler.onRow(iterator.next());
+							} else {
+								rows.add(iterator.next());
+							}
+						}
+						return rows;
+					} finally {
+						iterator.close();
+					}
+				}
+			});
+		}
+		return dbc.invokeAll(tasks);
+	}
+	
+	/**
+	 * Samples the key and document id of the rows at even offsets in the scanned range.
+	 * @return The boundaries between sub-ranges, as <tt>{key, docId}</tt> pairs in view order.
+	 */
+	private List<String[]> sampleBounds(int partitions) {
+		final List<String[]> bounds = new ArrayList<String[]>();
+		if(partitions == 1) {
+			return bounds;
+		}
+		final ViewResult<Object, Object, Object> header = new ViewResult<Object, Object, Object>();
+		queryHeader(rangeUri(startKey, startKeyDocId).query("endkey", endKey).query("endkey_docid", endKeyDocId)
+				.query("inclusive_end", inclusiveEnd).query("limit", 0).build(), header);
+		final long rows = header.getTotalRows() - header.getOffset(); // upper bound, endkey is not accounted
+		if(rows < partitions * 2) {
+			return bounds;
+		}
+		final List<Callable<String[]>> samples = new ArrayList<Callable<String[]>>(partitions - 1);
+		for (int i = 1; i < partitions; i++) {
+			final URI uri = rangeUri(startKey, startKeyDocId).query("endkey", endKey).query("endkey_docid", endKeyDocId)
+					.query("inclusive_end", inclusiveEnd).query("skip", rows * i / partitions).query("limit", 1).build();
+			samples.add(new Callable<String[]>() {
+				public String[] call() {
+					return sampleRow(uri);
+				}
+			});
+		}
+		for (String[] bound : dbc.invokeAll(samples)) {
+			if(bound == null) { 
+				break; // past the endkey
+			}
+			bounds.add(bound);
+		}
+		return bounds;
+	}
+	
+	/**
+	 * @return The key, as JSON, and document id of the first row, or {@code null} if there are no rows.
+	 */
+	private String[] sampleRow(URI uri) {
+		final StreamingIterator<String[]> iterator = new StreamingIterator<String[]>(dbc.get(uri)) {
+			@Override
+			void readHeader(JsonReader reader) throws IOException {
+				readViewHeader(reader, null);
+			}
+			
+			@Override
+			String[] readEntry(JsonReader reader) throws IOException {
+				return readKeyAndId(reader);
+			}
+		};
+		try {
+			return iterator.hasNext() ? iterator.next() : null;
+		} finally {
+			iterator.close();
+		}
+	}
+	
+	private void queryHeader(URI uri, final ViewResult<?, ?, ?> vr) {
+		final StreamingIterator<Object> iterator = new StreamingIterator<Object>(dbc.get(uri)) {
+			@Override
+			void readHeader(JsonReader reader) throws IOException {
+				readViewHeader(reader, vr);
+			}
+			
+			@Override
+			Object readEntry(JsonReader reader) throws IOException {
+				reader.skipValue();
+				return null;
+			}
+		};
+		try {
+			iterator.hasNext();
+		} finally {
+			iterator.close();
+		}
+	}
+	
+	/**
+	 * @return A builder of the view URI with the given start of range, and the query options that apply to a scan.
+	 */
+	private URIBuilder rangeUri(String startKey, String startKeyDocId) {
+		return URIBuilder.buildUri(viewURI).query("startkey", startKey).query("startkey_docid", startKeyDocId)
+				.query("stale", stale).query("descending", descending).query("group", group).query("group_level", groupLevel)
+				.query("reduce", reduce).query("include_docs", includeDocs).query("update_seq", updateSeq);
+	}
+	
 	/**
 	 * Queries a view.
 	 * @param <K> Object type K (key)
@@ -168,32 +418,134 @@ public class View {
 	 * @return The View result entries.
 	 */
 	public <K, V, T> ViewResult<K, V, T> queryView(Class<K> classOfK, Class<V> classOfV, Class<T> classOfT) {
-		InputStream instream = null;
-		try {  
-			Reader reader = new InputStreamReader(instream = queryForStream(), Charsets.UTF_8);
-			JsonObject json = new JsonParser().parse(reader).getAsJsonObject(); 
-			ViewResult<K, V, T> vr = new ViewResult<K, V, T>();
-			vr.setTotalRows(getAsLong(json, "total_rows")); 
-			vr.setOffset(getAsInt(json, "offset"));
-			vr.setUpdateSeq(getAsString(json, "update_seq"));
-			JsonArray jsonArray = json.getAsJsonArray("rows");
-			for (JsonElement e : jsonArray) {
-				ViewResult<K, V, T>.Rows row = vr.new Rows();
-				row.setId(JsonToObject(gson, e, "id", String.class));
-				if (classOfK != null) {
-				    row.setKey(JsonToObject(gson, e, "key", classOfK));
-				}
-				if (classOfV != null) {
-				    row.setValue(JsonToObject(gson, e, "value", classOfV));
-				}
-				if(Boolean.TRUE.equals(this.includeDocs)) {
-					row.setDoc(JsonToObject(gson, e, "doc", classOfT));
-				}
-				vr.getRows().add(row);
+		return queryView(queryForStream(), classOfK, classOfV, classOfT);
+	}
+	
+	/**
+	 * Reads the view result of the given response stream.
+	 */
+	<K, V, T> ViewResult<K, V, T> queryView(InputStream instream, Class<K> classOfK, Class<V> classOfV, Class<T> classOfT) {
+		final ViewResult<K, V, T> vr = new ViewResult<K, V, T>();
+		final StreamingIterator<ViewResult<K, V, T>.Rows> iterator = queryViewIterator(instream, vr, classOfK, classOfV, classOfT);
+		try {
+			while (iterator.hasNext()) {
+				vr.getRows().add(iterator.next());
 			}
 			return vr;
 		} finally {
-			close(instream);
+			iterator.close();
+		}
+	}
+	
+	/**
+	 * Queries a view, returning the result rows lazily as they are read from the response stream.
+	 * <p>Rows are deserialized one at a time, memory use is independent of the size of the result.
+	 * The iterator should be closed if not read to the end, as to avoid connection leaks.
+	 * @param <K> Object type K (key)
+	 * @param <V> Object type V (value)
+	 * @param <T> The class type
+	 * @param classOfK The class of type K.
+	 * @param classOfV The class of type V.
+	 * @param classOfT The class of type T.
+	 * @return A {@link StreamingIterator} over the View result entries.
+	 * @see #queryView(Class, Class, Class)
+	 */
+	public <K, V, T> StreamingIterator<ViewResult<K, V, T>.Rows> queryViewIterator(Class<K> classOfK, Class<V> classOfV, Class<T> classOfT) {
+		return queryViewIterator(queryForStream(), new ViewResult<K, V, T>(), classOfK, classOfV, classOfT);
+	}
+	
+	/**
+	 * Streams the view rows, the result header fields are set on the given {@link ViewResult}; rows are not added to it.
+	 */
+	private <K, V, T> StreamingIterator<ViewResult<K, V, T>.Rows> queryViewIterator(InputStream instream, final ViewResult<K, V, T> vr, 
+			final Class<K> classOfK, final Class<V> classOfV, final Class<T> classOfT) {
+		final boolean docs = Boolean.TRUE.equals(this.includeDocs);
+		return new StreamingIterator<ViewResult<K, V, T>.Rows>(instream) {
+			@Override
+			void readHeader(JsonReader reader) throws IOException {
+				readViewHeader(reader, vr);
+			}
+			
+			@Override
+			ViewResult<K, V, T>.Rows readEntry(JsonReader reader) throws IOException {
+				return readRow(reader, vr, classOfK, classOfV, classOfT, docs);
+			}
+			
+			@Override
+			void readTrailer(JsonReader reader) throws IOException {
+				readViewHeader(reader, vr); // fields may follow the rows
+			}
+		};
+	}
+	
+	private <K, V, T> ViewResult<K, V, T>.Rows readRow(JsonReader reader, ViewResult<K, V, T> vr, 
+			Class<K> classOfK, Class<V> classOfV, Class<T> classOfT, boolean docs) throws IOException {
+		ViewResult<K, V, T>.Rows row = vr.new Rows();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+			if("id".equals(name)) {
+				row.setId(StreamingIterator.nextStringOrNull(reader));
+			} else if("key".equals(name) && classOfK != null) {
+				row.setKey(gson.<K>fromJson(reader, classOfK));
+			} else if("value".equals(name) && classOfV != null) {
+				row.setValue(gson.<V>fromJson(reader, classOfV));
+			} else if("doc".equals(name) && docs) {
+				row.setDoc(gson.<T>fromJson(reader, classOfT));
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return row;
+	}
+	
+	/**
+	 * @return The key, as JSON, and document id of a row.
+	 */
+	private String[] readKeyAndId(JsonReader reader) throws IOException {
+		final String[] row = new String[2];
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+			if("key".equals(name)) {
+				row[0] = gson.fromJson(reader, JsonElement.class).toString();
+			} else if("id".equals(name)) {
+				row[1] = StreamingIterator.nextStringOrNull(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return row;
+	}
+	
+	/**
+	 * Reads the view result fields up to the start of the <tt>rows</tt> array, or 
+	 * up to the end of the result when the rows have been read.
+	 * @param vr The {@link ViewResult} to set the fields on, or {@code null} to skip them.
+	 */
+	private static void readViewHeader(JsonReader reader, ViewResult<?, ?, ?> vr) throws IOException {
+		if(reader.peek() == JsonToken.BEGIN_OBJECT) {
+			reader.beginObject();
+		}
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+			if("rows".equals(name)) {
+				reader.beginArray();
+				return;
+			}
+			if(vr == null || reader.peek() == JsonToken.NULL) {
+				reader.skipValue();
+			} else if("total_rows".equals(name)) {
+				vr.setTotalRows(reader.nextLong());
+			} else if("offset".equals(name)) {
+				vr.setOffset(reader.nextInt());
+			} else if("update_seq".equals(name)) {
+				vr.setUpdateSeq(reader.nextString());
+			} else {
+				reader.skipValue();
+			}
 		}
 	}
 	
@@ -231,18 +583,145 @@ public class View {
 	private <V> V queryValue(Class<V> classOfV) {
 		InputStream instream = null;
 		try {  
-			Reader reader = new InputStreamReader(instream = queryForStream(), Charsets.UTF_8);
-			JsonArray array = new JsonParser().parse(reader).
-							getAsJsonObject().get("rows").getAsJsonArray();
-			if(array.size() != 1) { 
-				throw new NoDocumentException("Expecting a single result but was: " + array.size());
+			final JsonReader reader = new JsonReader(new InputStreamReader(instream = queryForStream(), Charsets.UTF_8));
+			V value = null;
+			int count = 0;
+			reader.beginObject();
+			if(StreamingIterator.seekField(reader, "rows")) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					reader.beginObject();
+					while (reader.hasNext()) {
+						if("value".equals(reader.nextName()) && count == 0) {
+							value = gson.<V>fromJson(reader, classOfV);
+						} else {
+							reader.skipValue();
+						}
+					}
+					reader.endObject();
+					count++;
+				}
+			}
+			if(count != 1) { 
+				throw new NoDocumentException("Expecting a single result but was: " + count);
 			}
-			return JsonToObject(gson, array.get(0), "value", classOfV);
+			return value;
+		} catch (IOException e) {
+			throw new CouchDbException("Error reading response.", e);
 		} finally {
 			close(instream);
 		}
 	}
 	
+	/**
+	 * Creates a keyset pager over the view, a page starts at the key and document id of the row 
+	 * following the previous page, rather than at an offset.
+	 * <p>The pager holds a copy of the query options of this view, it is not affected by later changes 
+	 * to the view and is safe for use by multiple threads. Documents are only included when 
+	 * <code>classOfT</code> is given.
+	 * @param <K> Object type K (key)
+	 * @param <V> Object type V (value)
+	 * @param <T> The class type
+	 * @param rowsPerPage The number of rows per page.
+	 * @param classOfK The class of type K.
+	 * @param classOfV The class of type V.
+	 * @param classOfT The class of type T, or {@code null} to query keys and values only.
+	 * @return {@link ViewPager}
+	 */
+	public <K, V, T> ViewPager<K, V, T> pager(int rowsPerPage, Class<K> classOfK, Class<V> classOfV, Class<T> classOfT) {
+		if(rowsPerPage < 1) {
+			throw new IllegalArgumentException("rowsPerPage must be positive.");
+		}
+		if(dbc == null) {
+			throw new IllegalStateException("This view is executed by CouchDbClientAsync#query()");
+		}
+		if(allDocsKeys != null || limit != null || skip != null) {
+			throw new IllegalStateException("keys, limit and skip are not supported by a pager.");
+		}
+		return new ViewPager<K, V, T>(dbc, new View(this, classOfT != null), rowsPerPage, classOfK, classOfV, classOfT);
+	}
+	
+	/**
+	 * Queries a page of a {@link ViewPager}.
+	 * @param cursor The cursor of the page, or {@code null} for the first page.
+	 */
+	<K, V, T> ViewPage<K, V, T> queryKeysetPage(String cursor, final int rowsPerPage, 
+			final Class<K> classOfK, final Class<V> classOfV, final Class<T> classOfT) {
+		final String[] start = cursor == null ? new String[] { startKey, startKeyDocId } : decodeCursor(cursor);
+		final URI uri = rangeUri(start[0], start[1]).query("key", key).query("endkey", endKey).query("endkey_docid", endKeyDocId)
+				.query("inclusive_end", inclusiveEnd).query("limit", rowsPerPage + 1).build();
+		final boolean docs = Boolean.TRUE.equals(this.includeDocs);
+		final ViewResult<K, V, T> vr = new ViewResult<K, V, T>();
+		final String[][] next = new String[1][];
+		final StreamingIterator<Object> iterator = new StreamingIterator<Object>(dbc.get(uri)) {
+			@Override
+			void readHeader(JsonReader reader) throws IOException {
+				readViewHeader(reader, vr);
+			}
+			
+			@Override
+			Object readEntry(JsonReader reader) throws IOException {
+				if(vr.getRows().size() < rowsPerPage) {
+					vr.getRows().add(readRow(reader, vr, classOfK, classOfV, classOfT, docs));
+				} else { // the first row of the next page
+					next[0] = readKeyAndId(reader);
+				}
+				return null;
+			}
+			
+			@Override
+			void readTrailer(JsonReader reader) throws IOException {
+				readViewHeader(reader, vr);
+			}
+		};
+		try {
+			while (iterator.hasNext()) {
+				iterator.next();
+			}
+		} finally {
+			iterator.close();
+		}
+		return new ViewPage<K, V, T>(vr, next[0] != null ? encodeCursor(next[0][0], next[0][1]) : null);
+	}
+	
+	/**
+	 * Encodes a page start as URL safe Base64 of: a version byte, the key as JSON, and a flag 
+	 * followed by the document id if any.
+	 */
+	private static String encodeCursor(String keyJson, String docId) {
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream(keyJson.length() + 32);
+			final DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(CURSOR_VERSION);
+			out.writeUTF(keyJson);
+			out.writeBoolean(docId != null);
+			if(docId != null) {
+				out.writeUTF(docId);
+			}
+			out.close();
+			return Base64.encodeBase64URLSafeString(bytes.toByteArray());
+		} catch (IOException e) {
+			throw new CouchDbException("Error encoding cursor.", e);
+		}
+	}
+	
+	/**
+	 * @return The key, as JSON, and document id of a page start.
+	 */
+	private static String[] decodeCursor(String cursor) {
+		try {
+			final DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.decodeBase64(cursor)));
+			if(in.readByte() != CURSOR_VERSION) {
+				throw new CouchDbException("Unknown cursor version.");
+			}
+			final String keyJson = in.readUTF();
+			final String docId = in.readBoolean() ? in.readUTF() : null;
+			return new String[] { keyJson, docId };
+		} catch (IOException e) {
+			throw new CouchDbException("could not parse the given cursor!", e);
+		}
+	}
+	
 	/**
 	 * Queries a view for pagination, returns a next or a previous page, this method
 	 * figures out which page to return based on the given param that is generated by an
@@ -252,7 +731,10 @@ public class View {
 	 * @param param The request parameter to use to query a page, or {@code null} to return the first page.
 	 * @param classOfT The class of type T.
 	 * @return {@link Page}
+	 * @deprecated Modifies this view and reads a whole result tree per page, use 
+	 * {@link #pager(int, Class, Class, Class)} instead.
 	 */
+	@Deprecated
 	public <T> Page<T> queryPage(int rowsPerPage, String param, Class<T> classOfT) {
 		if(param == null) { // assume first page
 			return queryNextPage(rowsPerPage, null, null, null, null, classOfT);
@@ -570,6 +1052,20 @@ public class View {
 		return this;
 	}
 	
+	/**
+	 * @return The view request URI.
+	 */
+	URI getUri() {
+		return uriBuilder.build();
+	}
+	
+	/**
+	 * @return The <tt>keys</tt> request body of an <tt>_all_docs</tt> query, or {@code null} if not set.
+	 */
+	String getAllDocsKeys() {
+		return allDocsKeys;
+	}
+	
 	private String getKeyAsJson(Object... key) {
 		return (key.length == 1) ? gson.toJson(key[0]) : gson.toJson(key); // single or complex key
 	}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.util.List;
+
+/**
+ * Holds a page of a keyset view pagination.
+ * @param <K> Object type K (key)
+ * @param <V> Object type V (value)
+ * @param <T> The class type
+ * @see ViewPager
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class ViewPage<K, V, T> {
+	private final ViewResult<K, V, T> result;
+	private final String nextCursor;
+
+	ViewPage(ViewResult<K, V, T> result, String nextCursor) {
+		this.result = result;
+		this.nextCursor = nextCursor;
+	}
+
+	/**
+	 * @return The rows of the page.
+	 */
+	public List<ViewResult<K, V, T>.Rows> getRows() {
+		return result.getRows();
+	}
+
+	/**
+	 * @return The total number of rows of the view.
+	 */
+	public long getTotalRows() {
+		return result.getTotalRows();
+	}
+
+	/**
+	 * @return true If there is a next page.
+	 */
+	public boolean hasNext() {
+		return nextCursor != null;
+	}
+
+	/**
+	 * @return The opaque cursor of the next page, or {@code null} if this is the last page.
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	@Override
+	public String toString() {
+		return "ViewPage [rows=" + result.getRows().size() + ", nextCursor=" + nextCursor + "]";
+	}
+}
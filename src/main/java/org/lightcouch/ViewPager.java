@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Keyset pagination of a view. A page is queried by the opaque cursor returned with the 
+ * previous page, which holds the key and document id of the page's first row; pages are 
+ * read by <tt>startkey</tt> rather than <tt>skip</tt>, so every page costs the same.
+ * <p>A pager is immutable and safe for use by multiple threads.
+ * 
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * {@code
+ * ViewPager<String, Object, Foo> pager = dbClient.view("example/foo").pager(20, String.class, Object.class, Foo.class);
+ * 
+ * // by cursor, e.g. of a web request
+ * ViewPage<String, Object, Foo> page = pager.page(cursor);
+ * String next = page.getNextCursor();
+ * 
+ * // all pages, the next page is fetched while the current one is used
+ * for (ViewPage<String, Object, Foo> p : pager) {
+ * 	...
+ * }
+ * }
+ * </pre>
+ * @param <K> Object type K (key)
+ * @param <V> Object type V (value)
+ * @param <T> The class type
+ * @see View#pager(int, Class, Class, Class)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public class ViewPager<K, V, T> implements Iterable<ViewPage<K, V, T>> {
+	private final CouchDbClientBase dbc;
+	private final View view;
+	private final int rowsPerPage;
+	private final Class<K> classOfK;
+	private final Class<V> classOfV;
+	private final Class<T> classOfT;
+
+	ViewPager(CouchDbClientBase dbc, View view, int rowsPerPage, Class<K> classOfK, Class<V> classOfV, Class<T> classOfT) {
+		this.dbc = dbc;
+		this.view = view;
+		this.rowsPerPage = rowsPerPage;
+		this.classOfK = classOfK;
+		this.classOfV = classOfV;
+		this.classOfT = classOfT;
+	}
+
+	/**
+	 * @param cursor The cursor returned by {@link ViewPage#getNextCursor()}, or {@code null} for the first page.
+	 * @return The page.
+	 * @throws CouchDbException If the cursor is not valid.
+	 */
+	public ViewPage<K, V, T> page(String cursor) {
+		return view.queryKeysetPage(cursor, rowsPerPage, classOfK, classOfV, classOfT);
+	}
+
+	/**
+	 * @return An iterator over all pages, from the first page.
+	 * @see #iterator(String)
+	 */
+	public Iterator<ViewPage<K, V, T>> iterator() {
+		return iterator(null);
+	}
+
+	/**
+	 * Iterates over pages from the given cursor. Each page is requested as soon as the 
+	 * previous one is returned, on the client's worker threads, as to overlap the request with 
+	 * the processing of the previous page.
+	 * @param cursor The cursor of the first page, or {@code null} for the first page of the view.
+	 * @return An iterator over the pages.
+	 */
+	public Iterator<ViewPage<K, V, T>> iterator(final String cursor) {
+		return new Iterator<ViewPage<K, V, T>>() {
+			private FutureTask<ViewPage<K, V, T>> pending = prefetch(cursor);
+
+			public boolean hasNext() {
+				return pending != null;
+			}
+
+			public ViewPage<K, V, T> next() {
+				if(pending == null) {
+					throw new NoSuchElementException();
+				}
+				final ViewPage<K, V, T> page;
+				try {
+					page = CouchDbClientBase.await(pending);
+				} catch (RuntimeException e) {
+					pending = null;
+					throw e;
+				}
+				pending = page.hasNext() ? prefetch(page.getNextCursor()) : null;
+				return page;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private FutureTask<ViewPage<K, V, T>> prefetch(final String cursor) {
+		return dbc.runInBackground(new Callable<ViewPage<K, V, T>>() {
+			public ViewPage<K, V, T> call() {
+				return page(cursor);
+			}
+		});
+	}
+}
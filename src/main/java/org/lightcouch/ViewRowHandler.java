@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch;
+
+/**
+ * Receives the rows of a view scan.
+ * @param <T> Object type T
+ * @see View#parallelScan(int, Class, ViewRowHandler)
+ * @since 0.2.1
+ * @author Ahmed Yehia
+ */
+public interface ViewRowHandler<T> {
+
+	/**
+	 * Called for each row, in view order within a key range.
+	 * <p>Ranges are read concurrently, this method may be called from several threads at once.
+	 * @param row The row value, or the document when <tt>include_docs</tt> is set.
+	 */
+	void onRow(T row);
+}
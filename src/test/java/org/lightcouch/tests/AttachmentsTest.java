@@ -17,12 +17,23 @@
 package org.lightcouch.tests;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.apache.commons.codec.binary.Base64;
@@ -30,7 +41,9 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.lightcouch.Attachment;
+import org.lightcouch.AttachmentHandler;
 import org.lightcouch.CouchDbClient;
+import org.lightcouch.MultipartAttachment;
 import org.lightcouch.Params;
 import org.lightcouch.Response;
 
@@ -126,6 +139,74 @@ public class AttachmentsTest {
 		dbClient.saveAttachment(bytesIn, "foo.txt", "text/plain", respSave.getId(), respSave.getRev());
 	}
 	
+	@Test
+	public void standaloneAttachment_fileAndChannels() throws IOException {
+		byte[] bytesToDB = "binary data".getBytes();
+		File file = File.createTempFile("lightcouch", ".txt");
+		file.deleteOnExit();
+		FileOutputStream fileOut = new FileOutputStream(file);
+		fileOut.write(bytesToDB);
+		fileOut.close();
+		
+		String docId = generateUUID();
+		Response response = dbClient.saveAttachment(file, "foo.txt", "text/plain", docId, null);
+		response = dbClient.saveAttachment(ByteBuffer.wrap(bytesToDB), "bar.txt", "text/plain", docId, response.getRev());
+		
+		byte[] header = "header".getBytes();
+		File regionFile = File.createTempFile("lightcouch", ".bin");
+		regionFile.deleteOnExit();
+		fileOut = new FileOutputStream(regionFile);
+		fileOut.write(header);
+		fileOut.write(bytesToDB);
+		fileOut.close();
+		FileInputStream fileIn = new FileInputStream(regionFile);
+		try {
+			FileChannel channel = fileIn.getChannel();
+			channel.position(header.length);
+			response = dbClient.saveAttachment(channel, "baz.txt", "text/plain", docId, response.getRev());
+			assertEquals(header.length, channel.position());
+		} finally {
+			fileIn.close();
+		}
+		
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+		long count = dbClient.findAttachment(docId, "foo.txt", Channels.newChannel(bytesOut));
+		assertEquals(bytesToDB.length, count);
+		assertArrayEquals(bytesToDB, bytesOut.toByteArray());
+		
+		bytesOut.reset();
+		dbClient.findAttachment(docId, "bar.txt", Channels.newChannel(bytesOut));
+		assertArrayEquals(bytesToDB, bytesOut.toByteArray());
+		
+		bytesOut.reset();
+		dbClient.findAttachment(docId, "baz.txt", Channels.newChannel(bytesOut));
+		assertArrayEquals(bytesToDB, bytesOut.toByteArray());
+	}
+	
+	@Test
+	public void multipartAttachments() throws IOException {
+		byte[] bytesToDB = "binary data".getBytes();
+		List<MultipartAttachment> attachments = Arrays.asList(
+				new MultipartAttachment("foo.txt", "text/plain", ByteBuffer.wrap(bytesToDB)),
+				new MultipartAttachment("bar.txt", "text/plain", new ByteArrayInputStream(bytesToDB), bytesToDB.length));
+		Response response = dbClient.saveWithAttachments(new Bar(generateUUID()), attachments);
+		
+		final Map<String, byte[]> bytesFromDB = new HashMap<String, byte[]>();
+		Bar bar = dbClient.findWithAttachments(Bar.class, response.getId(), new AttachmentHandler() {
+			public void onAttachment(String name, String contentType, InputStream in) throws IOException {
+				ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+				int n;
+				while ((n = in.read()) != -1) {
+					bytesOut.write(n);
+				}
+				bytesFromDB.put(name, bytesOut.toByteArray());
+			}
+		});
+		assertEquals(2, bar.getAttachments().size());
+		assertArrayEquals(bytesToDB, bytesFromDB.get("foo.txt"));
+		assertArrayEquals(bytesToDB, bytesFromDB.get("bar.txt"));
+	}
+	
 	// Helper
 	
 	private static String generateUUID() {
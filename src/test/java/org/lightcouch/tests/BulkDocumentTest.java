@@ -17,17 +17,27 @@
 package org.lightcouch.tests;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.lightcouch.BulkWriter;
 import org.lightcouch.CouchDbClient;
+import org.lightcouch.DocumentConflictException;
+import org.lightcouch.FindAllResult;
 import org.lightcouch.Response;
+import org.lightcouch.StreamingIterator;
 
 import com.google.gson.JsonObject;
 
@@ -56,6 +66,79 @@ public class BulkDocumentTest {
 		assertThat(responses.size(), is(2));
 	}
 
+	@Test
+	public void bulkFromIterator() {
+		final int count = 1000;
+		Iterator<Foo> docs = new Iterator<Foo>() {
+			private int i;
+			public boolean hasNext() {
+				return i < count;
+			}
+			public Foo next() {
+				i++;
+				return new Foo();
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		List<Response> responses = dbClient.bulk(docs, true);
+
+		assertThat(responses.size(), is(count));
+	}
+
+	@Test
+	public void bulkIteratorReportsConflicts() {
+		Response saved = dbClient.save(new Foo());
+		List<Object> docs = new ArrayList<Object>();
+		docs.add(new Foo());
+		docs.add(new Foo(saved.getId())); // no revision, conflicts
+
+		StreamingIterator<Response> responses = dbClient.bulkIterator(docs, true);
+
+		assertNull(responses.next().getException());
+		assertTrue(responses.next().getException() instanceof DocumentConflictException);
+		assertFalse(responses.hasNext());
+	}
+
+	@Test
+	public void bulkWriter() throws Exception {
+		BulkWriter writer = dbClient.bulkWriter().batchSize(10);
+		List<Future<Response>> futures = new ArrayList<Future<Response>>();
+		for (int i = 0; i < 25; i++) {
+			futures.add(writer.save(new Foo()));
+		}
+		writer.close();
+		for (Future<Response> future : futures) {
+			assertNotNull(future.get().getRev());
+		}
+	}
+
+	@Test
+	public void bulkWriterCloseWhileWriting() throws Exception {
+		CouchDbStub stub = new CouchDbStub().latency(200).start();
+		CouchDbClient stubClient = new CouchDbClient(stub.properties("lightcouch-bulk-writer"));
+		try {
+			BulkWriter writer = stubClient.bulkWriter().batchSize(10).flushInterval(1);
+			List<Future<Response>> futures = new ArrayList<Future<Response>>();
+			for (int i = 0; i < 10; i++) {
+				futures.add(writer.save(new Foo()));
+			}
+			Thread.sleep(50); // the first batch is in flight
+			for (int i = 0; i < 10; i++) {
+				futures.add(writer.save(new Foo()));
+			}
+			writer.close();
+			for (Future<Response> future : futures) {
+				assertNotNull(future.get().getRev());
+			}
+		} finally {
+			stubClient.shutdown();
+			stub.stop();
+		}
+	}
+
 	@Test
 	public void bulkDocsRetrieve() {
 		Response r1 = dbClient.save(new Foo());
@@ -70,5 +153,26 @@ public class BulkDocumentTest {
 		
 		assertThat(docs.size(), is(2));
 	}
+	
+	@Test
+	public void bulkFindAll() {
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < 5; i++) {
+			ids.add(dbClient.save(new Foo()).getId());
+		}
+		Response removed = dbClient.save(new Foo());
+		dbClient.remove(removed.getId(), removed.getRev());
+		ids.add(removed.getId());
+		ids.add("no-such-doc");
+		ids.add(ids.get(0));
+		
+		FindAllResult<Foo> result = dbClient.findAll(Foo.class, ids, 2);
+		
+		assertThat(result.getDocuments().size(), is(5));
+		assertThat(new ArrayList<String>(result.getDocuments().keySet()), is(ids.subList(0, 5)));
+		assertThat(result.getDocuments().get(ids.get(0)).get_id(), is(ids.get(0)));
+		assertThat(result.getDeleted(), is(Arrays.asList(removed.getId())));
+		assertThat(result.getMissing(), is(Arrays.asList("no-such-doc")));
+	}
 
 }
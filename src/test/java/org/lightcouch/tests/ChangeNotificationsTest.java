@@ -21,7 +21,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -30,7 +37,11 @@ import org.lightcouch.Changes;
 import org.lightcouch.ChangesResult;
 import org.lightcouch.ChangesResult.Row;
 import org.lightcouch.CouchDbClient;
+import org.lightcouch.ChangesListener;
+import org.lightcouch.ChangesSubscription;
+import org.lightcouch.CouchDbException;
 import org.lightcouch.CouchDbInfo;
+import org.lightcouch.LiveDocumentMap;
 import org.lightcouch.Response;
 
 import com.google.gson.JsonObject;
@@ -99,4 +110,192 @@ public class ChangeNotificationsTest {
 			changes.stop();
 		}
 	}
+
+	@Test
+	public void changes_stopUnblocksContinuousFeed() {
+		String since = dbClient.context().info().getUpdateSeq();
+
+		final Changes changes = dbClient.changes()
+				.since(since)
+				.heartBeat(1000)
+				.reconnect(100, 1000)
+				.continuousChanges();
+
+		new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(500);
+				} catch (InterruptedException e) {}
+				changes.stop();
+			}
+		}.start();
+
+		assertThat(changes.hasNext(), is(false));
+		assertEquals(since, changes.getLastSeq());
+	}
+
+	@Test
+	public void changes_stopBeforeOpen() {
+		String since = dbClient.context().info().getUpdateSeq();
+
+		Changes changes = dbClient.changes()
+				.since(since)
+				.heartBeat(1000);
+		changes.stop();
+		changes.continuousChanges();
+
+		assertThat(changes.hasNext(), is(false));
+	}
+
+	@Test
+	public void changes_reconnectResumesFromLastSeq() throws Exception {
+		CouchDbStub stub = new CouchDbStub().start();
+		CouchDbClient stubClient = new CouchDbClient(stub.properties("lightcouch-changes-reconnect"));
+		try {
+			String since = stubClient.context().info().getUpdateSeq();
+			List<String> saved = new ArrayList<String>();
+			for (int i = 0; i < 5; i++) {
+				saved.add(stubClient.save(new Foo()).getId());
+			}
+			
+			stub.dropFeeds(2).errors(0.3, 503); // reconnects also fail at times
+			Changes changes = stubClient.changes()
+					.since(since)
+					.heartBeat(1000)
+					.reconnect(10, 100)
+					.continuousChanges();
+			List<String> ids = new ArrayList<String>();
+			while (ids.size() < saved.size() && changes.hasNext()) {
+				ids.add(changes.next().getId());
+			}
+			changes.stop();
+			stub.errors(0, 503);
+			
+			assertEquals(saved, ids);
+			assertEquals(stubClient.context().info().getUpdateSeq(), changes.getLastSeq());
+		} finally {
+			stubClient.shutdown();
+			stub.stop();
+		}
+	}
+
+	@Test
+	public void changes_subscribe() throws Exception {
+		String since = dbClient.context().info().getUpdateSeq();
+		final BlockingQueue<String> ids = new LinkedBlockingQueue<String>();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		ChangesSubscription subscription = dbClient.changes()
+				.since(since)
+				.heartBeat(1000)
+				.subscribe(new ChangesListener() {
+					public void onChange(Row row) {
+						ids.add(row.getId());
+					}
+
+					public void onError(CouchDbException e) {}
+				}, executor);
+		try {
+			Response response = dbClient.save(new Foo());
+
+			assertEquals(response.getId(), ids.poll(10, TimeUnit.SECONDS));
+		} finally {
+			subscription.close();
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void changes_closeUnblocksSaturatedSubscription() throws Exception {
+		String since = dbClient.context().info().getUpdateSeq();
+		final CountDownLatch handling = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+
+		final ChangesSubscription subscription = dbClient.changes()
+				.since(since)
+				.heartBeat(1000)
+				.subscribe(new ChangesListener() {
+					public void onChange(Row row) {
+						handling.countDown();
+						try {
+							release.await(); // a stuck handler
+						} catch (InterruptedException e) {}
+					}
+
+					public void onError(CouchDbException e) {}
+				}, executor, 1);
+		try {
+			dbClient.save(new Foo());
+			dbClient.save(new Foo());
+			assertThat(handling.await(10, TimeUnit.SECONDS), is(true));
+
+			Thread closer = new Thread() {
+				public void run() {
+					subscription.close();
+				}
+			};
+			closer.start();
+			closer.join(5000);
+			assertThat(closer.isAlive(), is(false));
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void changes_closeRightAfterSubscribe() throws Exception {
+		String since = dbClient.context().info().getUpdateSeq();
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		try {
+			for (int i = 0; i < 50; i++) {
+				final ChangesSubscription subscription = dbClient.changes()
+						.since(since)
+						.heartBeat(1000)
+						.subscribe(new ChangesListener() {
+							public void onChange(Row row) {}
+
+							public void onError(CouchDbException e) {}
+						}, executor);
+				Thread closer = new Thread() {
+					public void run() {
+						subscription.close();
+					}
+				};
+				closer.start();
+				closer.join(5000);
+				assertThat(closer.isAlive(), is(false));
+			}
+			for (Thread thread : Thread.getAllStackTraces().keySet()) {
+				assertThat(thread.getName().equals("lightcouch-changes-reader") && thread.isAlive(), is(false));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void liveDocumentMap() throws Exception {
+		Response existing = dbClient.save(new Foo());
+
+		LiveDocumentMap<Foo> foos = dbClient.liveDocumentMap(Foo.class).heartBeat(2000).start();
+		try {
+			assertNotNull(foos.get(existing.getId()));
+
+			Response saved = dbClient.save(new Foo());
+			for (int i = 0; i < 50 && !foos.containsKey(saved.getId()); i++) {
+				Thread.sleep(100);
+			}
+			assertNotNull(foos.get(saved.getId()));
+
+			dbClient.remove(saved.getId(), saved.getRev());
+			for (int i = 0; i < 50 && foos.containsKey(saved.getId()); i++) {
+				Thread.sleep(100);
+			}
+			assertThat(foos.containsKey(saved.getId()), is(false));
+		} finally {
+			foos.close();
+		}
+	}
 }
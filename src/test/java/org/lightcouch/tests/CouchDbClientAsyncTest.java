@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch.tests;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.apache.http.concurrent.FutureCallback;
+import org.lightcouch.CouchDbClientAsync;
+import org.lightcouch.NoDocumentException;
+import org.lightcouch.Response;
+import org.lightcouch.SimpleCouchDbMetrics;
+
+public class CouchDbClientAsyncTest {
+
+	private static CouchDbClientAsync dbClient;
+
+	@BeforeClass
+	public static void setUpClass() {
+		dbClient = new CouchDbClientAsync();
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+		dbClient.shutdown();
+	}
+
+	@Test
+	public void saveFindRemove() throws Exception {
+		Response response = dbClient.save(new Foo()).get();
+		Foo foo = dbClient.find(Foo.class, response.getId()).get();
+		assertEquals(response.getRev(), foo.get_rev());
+		assertNotNull(dbClient.remove(foo).get().getRev());
+	}
+
+	@Test
+	public void concurrentSaves() throws Exception {
+		List<Future<Response>> futures = new ArrayList<Future<Response>>();
+		for (int i = 0; i < 100; i++) {
+			futures.add(dbClient.save(new Foo()));
+		}
+		for (Future<Response> future : futures) {
+			assertNotNull(future.get().getId());
+		}
+	}
+
+	@Test
+	public void findMissingFails() throws Exception {
+		try {
+			dbClient.find(Foo.class, "no_such_id").get();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof NoDocumentException);
+			return;
+		}
+		throw new AssertionError("NoDocumentException expected");
+	}
+
+	@Test
+	public void requestMetrics() throws Exception {
+		SimpleCouchDbMetrics metrics = new SimpleCouchDbMetrics();
+		dbClient.setMetrics(metrics);
+		try {
+			Response response = dbClient.save(new Foo()).get();
+			dbClient.find(Foo.class, response.getId()).get();
+		} finally {
+			dbClient.setMetrics(null);
+		}
+
+		assertThat(metrics.getStats("save").getBytesSent(), is(not(0L)));
+		assertThat(metrics.getStats("find").getBytesReceived(), is(not(0L)));
+	}
+
+	@Test
+	public void callbacksRunOffIoThreads() throws Exception {
+		final BlockingQueue<String> threads = new LinkedBlockingQueue<String>();
+		Response response = dbClient.save(new Foo()).get();
+		dbClient.find(Foo.class, response.getId(), new FutureCallback<Foo>() {
+			public void completed(Foo foo) {
+				threads.add(Thread.currentThread().getName());
+			}
+
+			public void failed(Exception ex) {}
+
+			public void cancelled() {}
+		});
+		assertEquals("lightcouch-async-worker", threads.poll(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void callbacksRunOnBoundedPool() throws Exception {
+		CouchDbStub stub = new CouchDbStub().start();
+		CouchDbClientAsync stubClient = new CouchDbClientAsync(
+				stub.properties("lightcouch-async-workers").setMaxConnections(4));
+		try {
+			final Set<Thread> workers = Collections.synchronizedSet(new HashSet<Thread>());
+			List<Future<Response>> futures = new ArrayList<Future<Response>>();
+			for (int i = 0; i < 100; i++) {
+				futures.add(stubClient.save(new Foo(), new FutureCallback<Response>() {
+					public void completed(Response response) {
+						workers.add(Thread.currentThread());
+						try {
+							Thread.sleep(10); // a slow callback
+						} catch (InterruptedException e) {}
+					}
+
+					public void failed(Exception ex) {}
+
+					public void cancelled() {}
+				}));
+			}
+			for (Future<Response> future : futures) {
+				future.get();
+			}
+			assertTrue(workers.size() <= 4);
+		} finally {
+			stubClient.shutdown();
+			stub.stop();
+		}
+	}
+
+	@Test
+	public void cancelAbortsRequest() throws Exception {
+		CouchDbStub stub = new CouchDbStub().start();
+		CouchDbClientAsync stubClient = new CouchDbClientAsync(stub.properties("lightcouch-async-cancel"));
+		try {
+			stub.latency(5000);
+			Future<Response> future = stubClient.save(new Foo());
+			for (int i = 0; i < 50 && stubClient.getConnectionPoolStats().getLeased() == 0; i++) {
+				Thread.sleep(20);
+			}
+			assertThat(stubClient.getConnectionPoolStats().getLeased(), is(1));
+
+			assertTrue(future.cancel(true));
+			for (int i = 0; i < 50 && stubClient.getConnectionPoolStats().getLeased() != 0; i++) {
+				Thread.sleep(20);
+			}
+			assertThat(stubClient.getConnectionPoolStats().getLeased(), is(0));
+		} finally {
+			stubClient.shutdown();
+			stub.stop();
+		}
+	}
+}
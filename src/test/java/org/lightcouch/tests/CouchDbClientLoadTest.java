@@ -31,6 +31,9 @@ import org.lightcouch.CouchDbProperties;
  * 
  * <p> Unignore test then run: <tt>$ mvn test -Dtest=org.lightcouch.tests.CouchDbClientLoadTest</tt>
  * 
+ * <p> Runs against an in-process {@link CouchDbStub}, add <tt>-Dlightcouch.load.live=true</tt>
+ * to run against a CouchDB server on <tt>127.0.0.1:5984</tt> instead.
+ * 
  * @author ahmed
  *
  */
@@ -38,6 +41,7 @@ import org.lightcouch.CouchDbProperties;
 public class CouchDbClientLoadTest {
 	
 	private static CouchDbClient dbClient;
+	private static CouchDbStub stub;
 
 	private static final int NUM_THREADS     = 500; 
 	private static final int DOCS_PER_THREAD = 10;
@@ -46,13 +50,18 @@ public class CouchDbClientLoadTest {
 	private static final int MAX_CONNECTIONS = 20;
 	
 	@BeforeClass 
-	public static void setUpClass() {
+	public static void setUpClass() throws Exception {
+		int port = 5984;
+		if(!Boolean.getBoolean("lightcouch.load.live")) {
+			stub = new CouchDbStub().start();
+			port = stub.getPort();
+		}
 		CouchDbProperties properties = new CouchDbProperties()
 		  .setDbName("lightcouch-db-load")
 		  .setCreateDbIfNotExist(true)
 		  .setProtocol("http")
 		  .setHost("127.0.0.1")
-		  .setPort(5984)
+		  .setPort(port)
 		  .setMaxConnections(MAX_CONNECTIONS);
 		
 		dbClient = new CouchDbClient(properties);
@@ -61,6 +70,9 @@ public class CouchDbClientLoadTest {
 	@AfterClass
 	public static void tearDownClass() {
 		dbClient.shutdown();
+		if(stub != null) {
+			stub.stop();
+		}
 	}
 	
 	@Test
@@ -0,0 +1,1000 @@
+/*
+ * Copyright (C) 2011 lightcouch.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lightcouch.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lightcouch.CouchDbProperties;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process HTTP server implementing enough of the CouchDB API to run the client
+ * without a database: document CRUD, <tt>_bulk_docs</tt>, <tt>_all_docs</tt>, <tt>_changes</tt>
+ * (normal, and continuous up to the current seq), <tt>_find</tt>, <tt>_index</tt>, <tt>_explain</tt> and <tt>_uuids</tt>.
+ * <p>Documents are kept in memory, only their latest revision. Views, attachments and
+ * replication are not supported.
+ * <p>A fixed or random latency can be added to every request, and a share of requests
+ * can fail with a given status, as to test the client's behavior under slow or failing servers. 
+ * Continuous feeds can be dropped after a number of rows, as to test reconnecting.
+ * <h3>Usage Example:</h3>
+ * <pre>
+ * CouchDbStub stub = new CouchDbStub().latency(1, 5).errors(0.01, 503).start();
+ * CouchDbClient dbClient = new CouchDbClient(stub.properties("db-name"));
+ * ...
+ * stub.stop();
+ * </pre>
+ * @author Ahmed Yehia
+ */
+public class CouchDbStub {
+
+	static {
+		// small responses would otherwise wait on delayed ACKs
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private final Map<String, Db> dbs = new ConcurrentHashMap<String, Db>();
+	private final AtomicLong requestCount = new AtomicLong();
+	private final Random random = new Random();
+	private final Gson gson = new Gson();
+	private HttpServer server;
+	private ExecutorService executor;
+	private int port;
+
+	private volatile long minLatency;
+	private volatile long maxLatency;
+	private volatile double errorRate;
+	private volatile int errorStatus = 500;
+	private volatile int feedDropRows;
+
+	/**
+	 * A stub on a free port.
+	 */
+	public CouchDbStub() {
+		this(0);
+	}
+
+	/**
+	 * @param port The port to listen on, 0 for a free port.
+	 */
+	public CouchDbStub(int port) {
+		this.port = port;
+	}
+
+	// Options, may be changed while running
+
+	/**
+	 * @param millis The latency to add to each request.
+	 * @return {@link CouchDbStub}
+	 */
+	public CouchDbStub latency(long millis) {
+		return latency(millis, millis);
+	}
+
+	/**
+	 * @param minMillis The minimum latency to add to each request.
+	 * @param maxMillis The maximum latency to add to each request, uniformly distributed.
+	 * @return {@link CouchDbStub}
+	 */
+	public CouchDbStub latency(long minMillis, long maxMillis) {
+		this.minLatency = minMillis;
+		this.maxLatency = maxMillis;
+		return this;
+	}
+
+	/**
+	 * @param rate The share of requests to fail, between 0 and 1.
+	 * @param status The status code of failed requests, eg. 500 or 503.
+	 * @return {@link CouchDbStub}
+	 */
+	public CouchDbStub errors(double rate, int status) {
+		this.errorRate = rate;
+		this.errorStatus = status;
+		return this;
+	}
+
+	/**
+	 * @param rows The number of rows after which continuous feeds are ended, without 
+	 * a <tt>last_seq</tt> line, as a dropped connection; 0 to never drop.
+	 * @return {@link CouchDbStub}
+	 */
+	public CouchDbStub dropFeeds(int rows) {
+		this.feedDropRows = rows;
+		return this;
+	}
+
+	public CouchDbStub start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				final Thread t = new Thread(r, "couchdb-stub");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		server.setExecutor(executor);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					dispatch(exchange);
+				} catch (RuntimeException e) {
+					send(exchange, 500, error("unknown_error", String.valueOf(e)));
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+		port = server.getAddress().getPort();
+		return this;
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * @return The number of requests served.
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * @param dbName The database name.
+	 * @return Client properties to connect to this stub.
+	 */
+	public CouchDbProperties properties(String dbName) {
+		return new CouchDbProperties(dbName, true, "http", "127.0.0.1", port, null, null);
+	}
+
+	// Dispatch
+
+	private void dispatch(HttpExchange exchange) throws IOException {
+		requestCount.incrementAndGet();
+		delay();
+		final String method = exchange.getRequestMethod();
+		final byte[] body = read(exchange.getRequestBody());
+		final Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+		final List<String> path = path(exchange.getRequestURI().getRawPath());
+
+		if(errorRate > 0 && random.nextDouble() < errorRate) {
+			send(exchange, errorStatus, error("injected_error", "Injected by the stub."));
+			return;
+		}
+		if(path.isEmpty()) {
+			send(exchange, 200, "{\"couchdb\":\"Welcome\",\"version\":\"2.1.0\"}");
+		} else if("_all_dbs".equals(path.get(0))) {
+			send(exchange, 200, gson.toJson(new ArrayList<String>(new TreeMap<String, Db>(dbs).keySet())));
+		} else if("_uuids".equals(path.get(0))) {
+			final int count = query.containsKey("count") ? Integer.parseInt(query.get("count")) : 1;
+			final JsonArray uuids = new JsonArray();
+			for (int i = 0; i < count; i++) {
+				uuids.add(new JsonPrimitive(newUuid()));
+			}
+			final JsonObject json = new JsonObject();
+			json.add("uuids", uuids);
+			send(exchange, 200, json.toString());
+		} else if(path.get(0).startsWith("_")) {
+			send(exchange, 400, error("illegal_database_name", "Not supported by the stub."));
+		} else if(path.size() == 1) {
+			database(exchange, method, path.get(0), body);
+		} else {
+			final Db db = dbs.get(path.get(0));
+			if(db == null) {
+				send(exchange, 404, error("not_found", "Database does not exist."));
+				return;
+			}
+			final String id = docId(path);
+			if("_index".equals(path.get(1))) {
+				index(exchange, method, db, path, body);
+			} else if(id == null) {
+				send(exchange, 404, error("not_found", "Not supported by the stub."));
+			} else if("_bulk_docs".equals(id) && "POST".equals(method)) {
+				send(exchange, 201, db.bulkDocs(parse(body).getAsJsonObject()).toString());
+			} else if("_all_docs".equals(id)) {
+				send(exchange, 200, db.allDocs(query, "POST".equals(method) ? parse(body).getAsJsonObject() : null).toString());
+			} else if("_changes".equals(id)) {
+				changes(exchange, db, query);
+			} else if("_find".equals(id) && "POST".equals(method)) {
+				send(exchange, 200, db.find(parse(body).getAsJsonObject()).toString());
+			} else if("_explain".equals(id) && "POST".equals(method)) {
+				send(exchange, 200, db.explain(parse(body).getAsJsonObject()).toString());
+			} else if("_ensure_full_commit".equals(id) || "_compact".equals(id)) {
+				send(exchange, 201, "{\"ok\":true}");
+			} else if(id.startsWith("_") && !id.startsWith("_design/") && !id.startsWith("_local/")) {
+				send(exchange, 404, error("not_found", "Not supported by the stub."));
+			} else {
+				document(exchange, method, db, id, query, body);
+			}
+		}
+	}
+
+	/**
+	 * Mango indexes: <tt>GET</tt> and <tt>POST /db/_index</tt>, <tt>DELETE /db/_index/ddoc/json/name</tt>.
+	 */
+	private void index(HttpExchange exchange, String method, Db db, List<String> path, byte[] body) throws IOException {
+		if(path.size() == 2 && "GET".equals(method)) {
+			send(exchange, 200, db.indexes().toString());
+		} else if(path.size() == 2 && "POST".equals(method)) {
+			send(exchange, 200, db.createIndex(parse(body).getAsJsonObject()).toString());
+		} else if(path.size() >= 5 && "DELETE".equals(method)) {
+			final String ddoc = path.get(path.size() - 3);
+			if(db.deleteIndex("_design/" + ddoc, path.get(path.size() - 1))) {
+				send(exchange, 200, "{\"ok\":true}");
+			} else {
+				send(exchange, 404, error("not_found", "Index not found"));
+			}
+		} else {
+			send(exchange, 405, error("method_not_allowed", "Not supported by the stub."));
+		}
+	}
+
+	private void database(HttpExchange exchange, String method, String name, byte[] body) throws IOException {
+		Db db = dbs.get(name);
+		if("PUT".equals(method)) {
+			if(db != null) {
+				send(exchange, 412, error("file_exists", "The database could not be created, the file already exists."));
+			} else {
+				dbs.put(name, new Db(name));
+				send(exchange, 201, "{\"ok\":true}");
+			}
+		} else if(db == null) {
+			send(exchange, 404, error("not_found", "Database does not exist."));
+		} else if("DELETE".equals(method)) {
+			dbs.remove(name);
+			send(exchange, 200, "{\"ok\":true}");
+		} else if("POST".equals(method)) {
+			document(exchange, "POST", db, null, new HashMap<String, String>(), body);
+		} else {
+			send(exchange, 200, db.info().toString());
+		}
+	}
+
+	private void document(HttpExchange exchange, String method, Db db, String id, Map<String, String> query, byte[] body) throws IOException {
+		if("GET".equals(method) || "HEAD".equals(method)) {
+			final JsonObject doc = db.get(id);
+			if(doc == null) {
+				send(exchange, 404, error("not_found", "missing"));
+				return;
+			}
+			final String etag = "\"" + doc.get("_rev").getAsString() + "\"";
+			exchange.getResponseHeaders().add("ETag", etag);
+			if(etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+			} else if("HEAD".equals(method)) {
+				exchange.sendResponseHeaders(200, -1);
+			} else {
+				send(exchange, 200, doc.toString());
+			}
+		} else if("PUT".equals(method) || "POST".equals(method)) {
+			final JsonObject doc = parse(body).getAsJsonObject();
+			if(id != null) {
+				doc.addProperty("_id", id);
+			}
+			if(query.containsKey("rev")) {
+				doc.addProperty("_rev", query.get("rev"));
+			}
+			final JsonObject result = db.put(doc);
+			send(exchange, result.has("error") ? 409 : 201, result.toString());
+		} else if("DELETE".equals(method)) {
+			final JsonObject doc = new JsonObject();
+			doc.addProperty("_id", id);
+			doc.addProperty("_rev", query.get("rev"));
+			doc.addProperty("_deleted", true);
+			final JsonObject result = db.put(doc);
+			send(exchange, result.has("error") ? 409 : 200, result.toString());
+		} else {
+			send(exchange, 405, error("method_not_allowed", "Only GET,HEAD,PUT,POST,DELETE allowed"));
+		}
+	}
+
+	/**
+	 * A normal feed, or a continuous feed that is held open until the client disconnects
+	 * or <tt>timeout</tt> elapses, sending a blank line every <tt>heartbeat</tt>.
+	 */
+	private void changes(HttpExchange exchange, Db db, Map<String, String> query) throws IOException {
+		JsonObject changes = db.changes(query);
+		if(!"continuous".equals(query.get("feed"))) {
+			send(exchange, 200, changes.toString());
+			return;
+		}
+		final long heartBeat = query.containsKey("heartbeat") ? Long.parseLong(query.get("heartbeat")) : 0;
+		final long timeout = query.containsKey("timeout") ? Long.parseLong(query.get("timeout")) : heartBeat > 0 ? Long.MAX_VALUE : 60000;
+		final long end = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, 0);
+		final OutputStream out = exchange.getResponseBody();
+		final Map<String, String> next = new HashMap<String, String>(query);
+		final int dropRows = feedDropRows;
+		int sent = 0;
+		try {
+			while (true) {
+				final StringBuilder lines = new StringBuilder();
+				for (JsonElement row : changes.getAsJsonArray("results")) {
+					if(dropRows > 0 && sent++ == dropRows) {
+						out.write(lines.toString().getBytes("UTF-8"));
+						out.close();
+						return;
+					}
+					lines.append(row.toString()).append('\n');
+				}
+				next.put("since", changes.get("last_seq").getAsString());
+				final long wait = Math.min(heartBeat > 0 ? heartBeat : Long.MAX_VALUE, end - System.currentTimeMillis());
+				if(wait <= 0) {
+					final JsonObject lastSeq = new JsonObject();
+					lastSeq.add("last_seq", changes.get("last_seq"));
+					out.write(lines.append(lastSeq.toString()).append('\n').toString().getBytes("UTF-8"));
+					break;
+				}
+				out.write(lines.toString().getBytes("UTF-8"));
+				out.flush();
+				changes = db.awaitChanges(next, wait);
+				if(changes.getAsJsonArray("results").size() == 0 && heartBeat > 0) {
+					out.write('\n');
+					out.flush();
+				}
+			}
+			out.close();
+		} catch (IOException e) {
+			// client gone
+		} catch (InterruptedException e) {
+			// stopped
+		}
+	}
+
+	// Database
+
+	/**
+	 * A database, holding the latest revision of each document.
+	 */
+	private class Db {
+		private final String name;
+		private final TreeMap<String, JsonObject> docs = new TreeMap<String, JsonObject>();
+		private final TreeMap<Long, String> idsBySeq = new TreeMap<Long, String>();
+		private final Map<String, Long> seqsById = new HashMap<String, Long>();
+		private final Map<String, JsonObject> indexes = new LinkedHashMap<String, JsonObject>();
+		private long seq;
+
+		Db(String name) {
+			this.name = name;
+		}
+
+		synchronized JsonObject info() {
+			final JsonObject json = new JsonObject();
+			json.addProperty("db_name", name);
+			json.addProperty("doc_count", live().size());
+			json.addProperty("doc_del_count", docs.size() - live().size());
+			json.addProperty("update_seq", String.valueOf(seq));
+			return json;
+		}
+
+		synchronized JsonObject get(String id) {
+			final JsonObject doc = docs.get(id);
+			return doc == null || isDeleted(doc) ? null : doc;
+		}
+
+		/**
+		 * Saves a document, failing with a conflict if the revision is not the latest.
+		 */
+		synchronized JsonObject put(JsonObject doc) {
+			String id = doc.has("_id") ? doc.get("_id").getAsString() : null;
+			if(id == null) {
+				id = newUuid();
+				doc.addProperty("_id", id);
+			}
+			final JsonObject existing = docs.get(id);
+			final String rev = doc.has("_rev") ? doc.get("_rev").getAsString() : null;
+			final boolean live = existing != null && !isDeleted(existing);
+			if(live ? !existing.get("_rev").getAsString().equals(rev) : rev != null && existing == null) {
+				final JsonObject conflict = new JsonObject();
+				conflict.addProperty("id", id);
+				conflict.addProperty("error", "conflict");
+				conflict.addProperty("reason", "Document update conflict.");
+				return conflict;
+			}
+			final int generation = existing == null ? 1 : revGeneration(existing.get("_rev").getAsString()) + 1;
+			final String newRev = generation + "-" + newUuid();
+			doc.addProperty("_rev", newRev);
+			if(isDeleted(doc)) {
+				final JsonObject tombstone = new JsonObject();
+				tombstone.addProperty("_id", id);
+				tombstone.addProperty("_rev", newRev);
+				tombstone.addProperty("_deleted", true);
+				doc = tombstone;
+			}
+			docs.put(id, doc);
+			final Long previous = seqsById.put(id, ++seq);
+			if(previous != null) {
+				idsBySeq.remove(previous);
+			}
+			idsBySeq.put(seq, id);
+			notifyAll();
+			final JsonObject result = new JsonObject();
+			result.addProperty("ok", true);
+			result.addProperty("id", id);
+			result.addProperty("rev", newRev);
+			return result;
+		}
+
+		synchronized JsonArray bulkDocs(JsonObject request) {
+			final JsonArray results = new JsonArray();
+			for (JsonElement doc : request.getAsJsonArray("docs")) {
+				results.add(put(doc.getAsJsonObject()));
+			}
+			return results;
+		}
+
+		synchronized JsonObject allDocs(Map<String, String> query, JsonObject body) {
+			final boolean includeDocs = "true".equals(query.get("include_docs"));
+			final List<String> ids = new ArrayList<String>();
+			if(body != null && body.has("keys")) {
+				for (JsonElement key : body.getAsJsonArray("keys")) {
+					ids.add(key.getAsString());
+				}
+			} else {
+				final String key = jsonString(query.get("key"));
+				final String start = key != null ? key : jsonString(query.get("startkey"));
+				final String end = key != null ? key : jsonString(query.get("endkey"));
+				final String startDocId = query.get("startkey_docid");
+				final String endDocId = query.get("endkey_docid");
+				final boolean descending = "true".equals(query.get("descending"));
+				final int direction = descending ? -1 : 1; // the bounds follow the read order
+				final int endBound = "false".equals(query.get("inclusive_end")) ? -1 : 0;
+				for (String id : live().keySet()) {
+					if((start == null || direction * compareRow(id, start, startDocId) >= 0) 
+							&& (end == null || direction * compareRow(id, end, endDocId) <= endBound)) {
+						ids.add(id);
+					}
+				}
+				if(descending) {
+					Collections.reverse(ids);
+				}
+			}
+			final JsonArray rows = new JsonArray();
+			final int skip = query.containsKey("skip") ? Integer.parseInt(query.get("skip")) : 0;
+			final int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : Integer.MAX_VALUE;
+			for (int i = skip; i < ids.size() && rows.size() < limit; i++) {
+				final JsonObject row = new JsonObject();
+				final JsonObject doc = get(ids.get(i));
+				final JsonObject tombstone = docs.get(ids.get(i));
+				if(doc == null && tombstone != null) {
+					row.addProperty("id", ids.get(i));
+					row.addProperty("key", ids.get(i));
+					final JsonObject value = new JsonObject();
+					value.addProperty("rev", tombstone.get("_rev").getAsString());
+					value.addProperty("deleted", true);
+					row.add("value", value);
+					if(includeDocs) {
+						row.add("doc", JsonNull.INSTANCE);
+					}
+				} else if(doc == null) {
+					row.addProperty("key", ids.get(i));
+					row.addProperty("error", "not_found");
+				} else {
+					row.addProperty("id", ids.get(i));
+					row.addProperty("key", ids.get(i));
+					final JsonObject value = new JsonObject();
+					value.addProperty("rev", doc.get("_rev").getAsString());
+					row.add("value", value);
+					if(includeDocs) {
+						row.add("doc", doc);
+					}
+				}
+				rows.add(row);
+			}
+			final JsonObject result = new JsonObject();
+			result.addProperty("total_rows", live().size());
+			result.addProperty("offset", skip);
+			result.add("rows", rows);
+			return result;
+		}
+
+		/**
+		 * Waits up to <tt>millis</tt> for changes after <tt>since</tt>.
+		 */
+		synchronized JsonObject awaitChanges(Map<String, String> query, long millis) throws InterruptedException {
+			final long since = Long.parseLong(query.get("since"));
+			final long end = System.currentTimeMillis() + millis;
+			for (long wait = millis; seq <= since && wait > 0; wait = end - System.currentTimeMillis()) {
+				wait(wait);
+			}
+			return changes(query);
+		}
+
+		synchronized JsonObject changes(Map<String, String> query) {
+			final String since = query.get("since");
+			final long from = since == null ? 0 : "now".equals(since) ? seq : Long.parseLong(since.split("-")[0]);
+			final boolean includeDocs = "true".equals(query.get("include_docs"));
+			final int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : Integer.MAX_VALUE;
+			final JsonArray results = new JsonArray();
+			long last = from;
+			for (Map.Entry<Long, String> entry : idsBySeq.tailMap(from + 1).entrySet()) {
+				if(results.size() >= limit) {
+					break;
+				}
+				final JsonObject doc = docs.get(entry.getValue());
+				final JsonObject row = new JsonObject();
+				row.addProperty("seq", String.valueOf(entry.getKey()));
+				row.addProperty("id", entry.getValue());
+				final JsonArray revs = new JsonArray();
+				final JsonObject rev = new JsonObject();
+				rev.addProperty("rev", doc.get("_rev").getAsString());
+				revs.add(rev);
+				row.add("changes", revs);
+				if(isDeleted(doc)) {
+					row.addProperty("deleted", true);
+				}
+				if(includeDocs) {
+					row.add("doc", doc);
+				}
+				results.add(row);
+				last = entry.getKey();
+			}
+			final JsonObject result = new JsonObject();
+			result.add("results", results);
+			result.addProperty("last_seq", String.valueOf(last));
+			return result;
+		}
+
+		/**
+		 * Supports a selector on document fields with the common operators, sort, fields, skip, limit, bookmark 
+		 * and execution stats.
+		 * The bookmark is the offset of the next page.
+		 */
+		synchronized JsonObject find(JsonObject request) {
+			final JsonObject selector = request.has("selector") ? request.getAsJsonObject("selector") : new JsonObject();
+			final List<JsonObject> matches = new ArrayList<JsonObject>();
+			for (JsonObject doc : live().values()) {
+				if(!doc.get("_id").getAsString().startsWith("_design/") && Selectors.matches(selector, doc)) {
+					matches.add(doc);
+				}
+			}
+			if(request.has("sort")) {
+				Collections.sort(matches, Selectors.comparator(request.getAsJsonArray("sort")));
+			}
+			int skip = request.has("skip") ? request.get("skip").getAsInt() : 0;
+			if(request.has("bookmark") && !request.get("bookmark").isJsonNull() && !"nil".equals(request.get("bookmark").getAsString())) {
+				skip = Integer.parseInt(request.get("bookmark").getAsString());
+			}
+			final int limit = request.has("limit") ? request.get("limit").getAsInt() : 25;
+			final JsonArray result = new JsonArray();
+			int next = skip;
+			for (int i = skip; i < matches.size() && result.size() < limit; i++, next++) {
+				result.add(Selectors.project(matches.get(i), request.has("fields") ? request.getAsJsonArray("fields") : null));
+			}
+			final JsonObject json = new JsonObject();
+			json.add("docs", result);
+			json.addProperty("bookmark", result.size() == 0 ? "nil" : String.valueOf(next));
+			if(request.has("execution_stats") && request.get("execution_stats").getAsBoolean()) {
+				final JsonObject stats = new JsonObject();
+				stats.addProperty("total_keys_examined", 0);
+				stats.addProperty("total_docs_examined", live().size());
+				stats.addProperty("total_quorum_docs_examined", 0);
+				stats.addProperty("results_returned", result.size());
+				stats.addProperty("execution_time_ms", 0.5);
+				json.add("execution_stats", stats);
+			}
+			return json;
+		}
+
+		synchronized JsonObject indexes() {
+			final JsonArray list = new JsonArray();
+			list.add(allDocsIndex());
+			for (JsonObject index : indexes.values()) {
+				list.add(index);
+			}
+			final JsonObject json = new JsonObject();
+			json.addProperty("total_rows", list.size());
+			json.add("indexes", list);
+			return json;
+		}
+
+		synchronized JsonObject createIndex(JsonObject request) {
+			final JsonArray fields = new JsonArray();
+			for (JsonElement field : request.getAsJsonObject("index").getAsJsonArray("fields")) {
+				if(field.isJsonPrimitive()) {
+					final JsonObject asc = new JsonObject();
+					asc.addProperty(field.getAsString(), "asc");
+					fields.add(asc);
+				} else {
+					fields.add(field);
+				}
+			}
+			final String hash = Integer.toHexString(fields.toString().hashCode());
+			final String ddoc = "_design/" + (request.has("ddoc") ? request.get("ddoc").getAsString() : hash);
+			final String name = request.has("name") ? request.get("name").getAsString() : hash;
+			final JsonObject def = new JsonObject();
+			def.add("fields", fields);
+			final JsonObject index = new JsonObject();
+			index.addProperty("ddoc", ddoc);
+			index.addProperty("name", name);
+			index.addProperty("type", "json");
+			index.add("def", def);
+			final JsonObject result = new JsonObject();
+			result.addProperty("result", indexes.containsKey(ddoc + "/" + name) ? "exists" : "created");
+			result.addProperty("id", ddoc);
+			result.addProperty("name", name);
+			indexes.put(ddoc + "/" + name, index);
+			return result;
+		}
+
+		synchronized boolean deleteIndex(String ddoc, String name) {
+			return indexes.remove(ddoc + "/" + name) != null;
+		}
+
+		/**
+		 * Chooses the first json index whose first field is in the selector, or <tt>_all_docs</tt>.
+		 */
+		synchronized JsonObject explain(JsonObject request) {
+			final JsonObject selector = request.has("selector") ? request.getAsJsonObject("selector") : new JsonObject();
+			JsonObject chosen = allDocsIndex();
+			for (JsonObject index : indexes.values()) {
+				final JsonObject first = index.getAsJsonObject("def").getAsJsonArray("fields").get(0).getAsJsonObject();
+				if(selector.has(first.entrySet().iterator().next().getKey())) {
+					chosen = index;
+					break;
+				}
+			}
+			final JsonObject json = new JsonObject();
+			json.addProperty("dbname", name);
+			json.add("index", chosen);
+			json.add("selector", selector);
+			return json;
+		}
+
+		private JsonObject allDocsIndex() {
+			final JsonObject id = new JsonObject();
+			id.addProperty("_id", "asc");
+			final JsonArray fields = new JsonArray();
+			fields.add(id);
+			final JsonObject def = new JsonObject();
+			def.add("fields", fields);
+			final JsonObject index = new JsonObject();
+			index.add("ddoc", JsonNull.INSTANCE);
+			index.addProperty("name", "_all_docs");
+			index.addProperty("type", "special");
+			index.add("def", def);
+			return index;
+		}
+
+		private TreeMap<String, JsonObject> live() {
+			final TreeMap<String, JsonObject> live = new TreeMap<String, JsonObject>();
+			for (Map.Entry<String, JsonObject> entry : docs.entrySet()) {
+				if(!isDeleted(entry.getValue())) {
+					live.put(entry.getKey(), entry.getValue());
+				}
+			}
+			return live;
+		}
+	}
+
+	/**
+	 * Mango selector evaluation.
+	 */
+	private static class Selectors {
+
+		static boolean matches(JsonObject selector, JsonObject doc) {
+			for (Map.Entry<String, JsonElement> entry : selector.entrySet()) {
+				final String field = entry.getKey();
+				final JsonElement condition = entry.getValue();
+				if("$and".equals(field) || "$or".equals(field)) {
+					boolean any = false, all = true;
+					for (JsonElement sub : condition.getAsJsonArray()) {
+						final boolean match = matches(sub.getAsJsonObject(), doc);
+						any |= match;
+						all &= match;
+					}
+					if("$and".equals(field) ? !all : !any) {
+						return false;
+					}
+				} else if("$not".equals(field)) {
+					if(matches(condition.getAsJsonObject(), doc)) {
+						return false;
+					}
+				} else if(!matchesField(field(doc, field), condition)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static boolean matchesField(JsonElement value, JsonElement condition) {
+			if(!condition.isJsonObject() || !isOperators(condition.getAsJsonObject())) {
+				return value != null && value.equals(condition);
+			}
+			for (Map.Entry<String, JsonElement> op : condition.getAsJsonObject().entrySet()) {
+				final String name = op.getKey();
+				final JsonElement arg = op.getValue();
+				boolean match;
+				if("$exists".equals(name)) {
+					match = (value != null) == arg.getAsBoolean();
+				} else if(value == null) {
+					match = false;
+				} else if("$eq".equals(name)) {
+					match = value.equals(arg);
+				} else if("$ne".equals(name)) {
+					match = !value.equals(arg);
+				} else if("$gt".equals(name)) {
+					match = compare(value, arg) > 0;
+				} else if("$gte".equals(name)) {
+					match = compare(value, arg) >= 0;
+				} else if("$lt".equals(name)) {
+					match = compare(value, arg) < 0;
+				} else if("$lte".equals(name)) {
+					match = compare(value, arg) <= 0;
+				} else if("$in".equals(name) || "$nin".equals(name)) {
+					boolean found = false;
+					for (JsonElement candidate : arg.getAsJsonArray()) {
+						found |= value.equals(candidate);
+					}
+					match = "$in".equals(name) ? found : !found;
+				} else {
+					throw new IllegalArgumentException("Operator not supported by the stub: " + name);
+				}
+				if(!match) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static boolean isOperators(JsonObject condition) {
+			for (String key : condition.keySet()) {
+				if(!key.startsWith("$")) {
+					return false;
+				}
+			}
+			return condition.size() > 0;
+		}
+
+		/**
+		 * Orders values as CouchDB collation does for scalars: null, booleans, numbers, strings, arrays, objects.
+		 */
+		static int compare(JsonElement a, JsonElement b) {
+			final int rankA = rank(a), rankB = rank(b);
+			if(rankA != rankB) {
+				return rankA < rankB ? -1 : 1;
+			}
+			if(a.isJsonPrimitive()) {
+				final JsonPrimitive pa = a.getAsJsonPrimitive(), pb = b.getAsJsonPrimitive();
+				if(pa.isNumber()) {
+					return Double.compare(pa.getAsDouble(), pb.getAsDouble());
+				} else if(pa.isBoolean()) {
+					return Boolean.valueOf(pa.getAsBoolean()).compareTo(pb.getAsBoolean());
+				}
+				return pa.getAsString().compareTo(pb.getAsString());
+			}
+			return a.toString().compareTo(b.toString());
+		}
+
+		private static int rank(JsonElement e) {
+			if(e == null || e.isJsonNull()) return 0;
+			if(e.isJsonPrimitive()) {
+				final JsonPrimitive p = e.getAsJsonPrimitive();
+				return p.isBoolean() ? 1 : p.isNumber() ? 2 : 3;
+			}
+			return e.isJsonArray() ? 4 : 5;
+		}
+
+		static JsonElement field(JsonObject doc, String path) {
+			JsonElement current = doc;
+			for (String part : path.split("\\.")) {
+				if(current == null || !current.isJsonObject()) {
+					return null;
+				}
+				current = current.getAsJsonObject().get(part);
+			}
+			return current;
+		}
+
+		static Comparator<JsonObject> comparator(final JsonArray sort) {
+			return new Comparator<JsonObject>() {
+				public int compare(JsonObject a, JsonObject b) {
+					for (JsonElement s : sort) {
+						String field;
+						boolean desc = false;
+						if(s.isJsonObject()) {
+							final Map.Entry<String, JsonElement> entry = s.getAsJsonObject().entrySet().iterator().next();
+							field = entry.getKey();
+							desc = "desc".equals(entry.getValue().getAsString());
+						} else {
+							field = s.getAsString();
+						}
+						final int c = Selectors.compare(field(a, field), field(b, field));
+						if(c != 0) {
+							return desc ? -c : c;
+						}
+					}
+					return 0;
+				}
+			};
+		}
+
+		static JsonObject project(JsonObject doc, JsonArray fields) {
+			if(fields == null) {
+				return doc;
+			}
+			final JsonObject projected = new JsonObject();
+			for (JsonElement f : fields) {
+				final JsonElement value = field(doc, f.getAsString());
+				if(value != null) {
+					projected.add(f.getAsString(), value);
+				}
+			}
+			return projected;
+		}
+	}
+
+	// Helpers
+
+	private void delay() {
+		final long min = minLatency, max = maxLatency;
+		if(max <= 0) {
+			return;
+		}
+		final long millis = max > min ? min + (long) (random.nextDouble() * (max - min)) : min;
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static boolean isDeleted(JsonObject doc) {
+		return doc.has("_deleted") && doc.get("_deleted").getAsBoolean();
+	}
+
+	private static int revGeneration(String rev) {
+		return Integer.parseInt(rev.substring(0, rev.indexOf('-')));
+	}
+
+	private static String newUuid() {
+		return UUID.randomUUID().toString().replace("-", "");
+	}
+
+	/**
+	 * @return The document id the path refers to, or null for attachments and views.
+	 */
+	private static String docId(List<String> path) {
+		if(path.size() == 2) {
+			return path.get(1);
+		}
+		if(path.size() == 3 && ("_design".equals(path.get(1)) || "_local".equals(path.get(1)))) {
+			return path.get(1) + "/" + path.get(2);
+		}
+		return null;
+	}
+
+	private static List<String> path(String rawPath) {
+		final List<String> segments = new ArrayList<String>();
+		for (String segment : rawPath.split("/")) {
+			if(segment.length() != 0) {
+				segments.add(decode(segment));
+			}
+		}
+		return segments;
+	}
+
+	private static Map<String, String> query(String rawQuery) {
+		final Map<String, String> params = new HashMap<String, String>();
+		if(rawQuery != null) {
+			for (String param : rawQuery.split("&")) {
+				final int eq = param.indexOf('=');
+				if(eq != -1) {
+					params.put(decode(param.substring(0, eq)), decode(param.substring(eq + 1)));
+				}
+			}
+		}
+		return params;
+	}
+
+	/**
+	 * Compares an <tt>_all_docs</tt> row, whose key is its id, to a key and doc id bound.
+	 */
+	private static int compareRow(String id, String key, String docId) {
+		final int c = id.compareTo(key);
+		return (c != 0 || docId == null) ? c : id.compareTo(docId);
+	}
+
+	private static String jsonString(String json) {
+		if(json == null) {
+			return null;
+		}
+		final JsonElement e = new JsonParser().parse(json);
+		return e.isJsonNull() ? null : e.getAsString();
+	}
+
+	private static String decode(String s) {
+		try {
+			return URLDecoder.decode(s, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static JsonElement parse(byte[] body) throws UnsupportedEncodingException {
+		final JsonElement json = new JsonParser().parse(new String(body, "UTF-8"));
+		return json.isJsonNull() ? JsonNull.INSTANCE : json;
+	}
+
+	private static String error(String error, String reason) {
+		final JsonObject json = new JsonObject();
+		json.addProperty("error", error);
+		json.addProperty("reason", reason);
+		return json.toString();
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		final byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		if("HEAD".equals(exchange.getRequestMethod())) {
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(status, bytes.length);
+		final OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+}
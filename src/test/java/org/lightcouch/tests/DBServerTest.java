@@ -23,11 +23,14 @@ import static org.junit.Assert.assertThat;
 
 import java.util.List;
 
+import org.apache.http.pool.PoolStats;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.lightcouch.CouchDbClient;
 import org.lightcouch.CouchDbInfo;
+import org.lightcouch.Response;
+import org.lightcouch.SimpleCouchDbMetrics;
 
 public class DBServerTest {
 
@@ -76,4 +79,28 @@ public class DBServerTest {
 		List<String> uuids = dbClient.context().uuids(10);
 		assertThat(uuids.size(), is(10));
 	}
+
+	@Test
+	public void requestMetrics() {
+		SimpleCouchDbMetrics metrics = new SimpleCouchDbMetrics();
+		dbClient.setMetrics(metrics);
+		try {
+			Response response = dbClient.save(new Foo());
+			dbClient.find(Foo.class, response.getId());
+		} finally {
+			dbClient.setMetrics(null);
+		}
+
+		SimpleCouchDbMetrics.OperationStats find = metrics.getStats("find");
+		assertThat(find.getCount(), is(1L));
+		assertThat(find.getStatusCodes().get(200), is(1L));
+		assertThat(find.getBytesReceived(), is(not(0L)));
+		assertThat(metrics.getStats("save").getBytesSent(), is(not(0L)));
+	}
+
+	@Test
+	public void connectionPoolStats() {
+		PoolStats stats = dbClient.getConnectionPoolStats();
+		assertThat(stats.getLeased(), is(0));
+	}
 }
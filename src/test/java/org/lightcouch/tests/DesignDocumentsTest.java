@@ -20,7 +20,9 @@ import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertEquals;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -65,5 +67,27 @@ public class DesignDocumentsTest {
 		
 		assertThat(designDocs.size(), not(0));
 	}
+	
+	@Test
+	public void designDocsSyncSkipsUnchanged() {
+		dbClient.syncDesignDocsWithDb();
+		List<DesignDocument> designDocs = dbClient.design().getAllFromDesk();
+		Map<String, String> revisions = new HashMap<String, String>();
+		for (DesignDocument designDoc : designDocs) {
+			revisions.put(designDoc.getId(), dbClient.design().getFromDb(designDoc.getId()).getRevision());
+		}
+		
+		dbClient.syncDesignDocsWithDb();
+		for (DesignDocument designDoc : designDocs) {
+			assertEquals(revisions.get(designDoc.getId()), dbClient.design().getFromDb(designDoc.getId()).getRevision());
+		}
+		
+		DesignDocument modified = dbClient.design().getFromDb("_design/example");
+		modified.getViews().clear();
+		dbClient.update(modified);
+		dbClient.syncDesignDocsWithDb();
+		
+		assertEquals(dbClient.design().getFromDesk("example"), dbClient.design().getFromDb("_design/example"));
+	}
 
 }
@@ -23,21 +23,31 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.lightcouch.CouchDbClient;
+import org.lightcouch.DocumentAccessor;
+import org.lightcouch.DocumentCache;
 import org.lightcouch.DocumentConflictException;
+import org.lightcouch.DocumentTypeAdapter;
+import org.lightcouch.GsonCodec;
+import org.lightcouch.JsonCodec;
 import org.lightcouch.NoDocumentException;
 import org.lightcouch.Params;
 import org.lightcouch.Response;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 public class DocumentsCRUDTest {
 
@@ -108,6 +118,89 @@ public class DocumentsCRUDTest {
 		assertNotNull(foo);
 	}
 
+	@Test
+	public void findWithDocumentCache() {
+		Response response = dbClient.save(new Foo());
+		DocumentCache cache = new DocumentCache(10);
+		dbClient.setDocumentCache(cache);
+		try {
+			dbClient.find(Foo.class, response.getId());
+			Foo foo = dbClient.find(Foo.class, response.getId());
+			assertEquals(1, cache.getHitCount());
+			Response updated = dbClient.update(foo);
+			assertEquals(0, cache.size());
+			foo = dbClient.find(Foo.class, response.getId());
+			assertEquals(updated.getRev(), foo.get_rev());
+		} finally {
+			dbClient.setDocumentCache(null);
+		}
+	}
+
+	@Test
+	public void findWithTypeAdapter() {
+		CouchDbClient client = new CouchDbClient();
+		try {
+			client.registerTypeAdapter(Bar.class, new DocumentTypeAdapter<Bar>() {
+				protected Bar newInstance() {
+					return new Bar();
+				}
+
+				protected void readField(JsonReader in, Bar bar, String name) throws IOException {
+					if("bar".equals(name)) {
+						bar.setBar(in.nextString());
+					} else {
+						in.skipValue();
+					}
+				}
+
+				protected void writeFields(JsonWriter out, Bar bar) throws IOException {
+					out.name("bar").value(bar.getBar());
+				}
+			});
+			Bar bar = new Bar(generateUUID());
+			bar.setBar("value");
+			Response response = client.save(bar);
+			Bar found = client.find(Bar.class, response.getId());
+			assertEquals("value", found.getBar());
+			assertEquals(response.getRev(), found.getRevision());
+		} finally {
+			client.shutdown();
+		}
+	}
+
+	@Test
+	public void saveAndFindWithJsonCodec() {
+		final GsonCodec gsonCodec = new GsonCodec(dbClient.getGson());
+		final AtomicInteger calls = new AtomicInteger();
+		CouchDbClient client = new CouchDbClient();
+		try {
+			client.setJsonCodec(new JsonCodec() {
+				public <T> T decode(InputStream in, Type type) throws IOException {
+					calls.incrementAndGet();
+					return gsonCodec.<T>decode(in, type);
+				}
+
+				public void encode(Object object, OutputStream out) throws IOException {
+					calls.incrementAndGet();
+					gsonCodec.encode(object, out);
+				}
+			});
+			Response response = client.save(new Foo(generateUUID(), "title"));
+			Foo foo = client.find(Foo.class, response.getId());
+			assertEquals("title", foo.getTitle());
+			assertEquals(2, calls.get());
+			
+			JsonObject json = new JsonObject();
+			json.addProperty("title", "json");
+			response = client.save(json);
+			json = client.find(JsonObject.class, response.getId());
+			assertEquals("json", json.get("title").getAsString());
+			assertEquals(2, calls.get()); // Gson's own types skip the codec
+		} finally {
+			client.shutdown();
+		}
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void findWithInvalidId_throwsIllegalArgumentException() {
 		dbClient.find(Foo.class, "");
@@ -208,6 +301,31 @@ public class DocumentsCRUDTest {
 		assertEquals(idWithSlash, responseUpdate.getId());
 	}
 
+	@Test
+	public void updateWithDocumentAccessor() {
+		CouchDbClient client = new CouchDbClient();
+		try {
+			client.registerDocumentAccessor(Foo.class, new DocumentAccessor<Foo>() {
+				public String getId(Foo foo) {
+					return foo.get_id();
+				}
+
+				public String getRevision(Foo foo) {
+					return foo.get_rev();
+				}
+			});
+			Response response = client.save(new Foo(generateUUID(), "title"));
+			Foo foo = client.find(Foo.class, response.getId());
+			foo.setTitle("updated");
+			client.update(foo);
+			assertEquals("updated", client.find(Foo.class, response.getId()).getTitle());
+			client.remove(client.find(Foo.class, response.getId()));
+			assertFalse(client.contains(response.getId()));
+		} finally {
+			client.shutdown();
+		}
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void updateWithoutIdAndRev_throwsIllegalArgumentException() {
 		dbClient.update(new Foo());
@@ -16,15 +16,31 @@
 
 package org.lightcouch.tests;
 
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.lightcouch.CouchDbClient;
+import org.lightcouch.CouchDbException;
+import org.lightcouch.MangoIndex;
+import org.lightcouch.MangoIndexes;
+import org.lightcouch.MangoIterator;
+import org.lightcouch.MangoQuery;
+
+import com.google.gson.JsonObject;
+import com.google.gson.annotations.SerializedName;
 
 public class MangoTest {
 
@@ -50,4 +66,185 @@ public class MangoTest {
 		
 		assertThat(docs.size(), not(0));
 	}
+	
+	@Test
+	public void findStream() {
+		String title = "mango-" + System.nanoTime();
+		for (int i = 0; i < 7; i++) {
+			dbClient.save(new Foo(null, title));
+		}
+		MangoQuery query = new MangoQuery()
+				.selector("{\"title\":\"" + title + "\"}")
+				.batchSize(3);
+		
+		MangoIterator<Foo> it = dbClient.findStream(query, Foo.class);
+		int count = 0;
+		while (it.hasNext()) {
+			assertThat(it.next().getTitle(), is(title));
+			count++;
+		}
+		assertThat(count, is(7));
+		assertNotNull(it.getBookmark());
+		
+		it = dbClient.findStream(query.limit(5), Foo.class);
+		count = 0;
+		while (it.hasNext()) {
+			it.next();
+			count++;
+		}
+		assertThat(count, is(5));
+	}
+	
+	@Test
+	public void findStreamCloseAbortsRequest() throws Exception {
+		CouchDbStub stub = new CouchDbStub().start();
+		CouchDbClient stubClient = new CouchDbClient(stub.properties("lightcouch-mango-close"));
+		try {
+			stubClient.save(new Foo());
+			stub.latency(5000);
+			MangoIterator<Foo> it = stubClient.findStream(new MangoQuery().where("title", "none"), Foo.class);
+			for (int i = 0; i < 50 && stubClient.getConnectionPoolStats().getLeased() == 0; i++) {
+				Thread.sleep(20);
+			}
+			assertThat(stubClient.getConnectionPoolStats().getLeased(), is(1));
+			
+			it.close();
+			for (int i = 0; i < 50 && stubClient.getConnectionPoolStats().getLeased() != 0; i++) {
+				Thread.sleep(20);
+			}
+			assertThat(stubClient.getConnectionPoolStats().getLeased(), is(0));
+			assertFalse(it.hasNext());
+		} finally {
+			stubClient.shutdown();
+			stub.stop();
+		}
+	}
+	
+	@Test
+	public void findStreamWithQueryTemplate() {
+		String title = "mango-" + System.nanoTime();
+		for (int i = 0; i < 5; i++) {
+			Foo foo = new Foo(null, title);
+			foo.setPosition(i);
+			dbClient.save(foo);
+		}
+		MangoQuery query = new MangoQuery()
+				.where("title", MangoQuery.param("title"))
+				.where("position", "$gte", MangoQuery.param("min"))
+				.where("position", "$lt", 4)
+				.fields("_id", "title", "position")
+				.executionStats(true)
+				.batchSize(2);
+		
+		for (int min = 0; min < 2; min++) {
+			MangoIterator<Foo> it = dbClient.findStream(query.with("title", title).with("min", min), Foo.class);
+			List<Integer> positions = new ArrayList<Integer>();
+			while (it.hasNext()) {
+				Foo foo = it.next();
+				assertThat(foo.getTitle(), is(title));
+				positions.add(foo.getPosition());
+			}
+			assertThat(Collections.min(positions), is(min));
+			assertThat(Collections.max(positions), is(3));
+			assertThat(positions.size(), is(4 - min));
+			assertThat(it.getExecutionStats().getResultsReturned(), is((long) positions.size()));
+		}
+	}
+	
+	@Test
+	public void conditionsOnSameFieldCombined() {
+		String title = "mango-" + System.nanoTime();
+		for (int i = 0; i < 3; i++) {
+			Foo foo = new Foo(null, title);
+			foo.setPosition(i * 10);
+			dbClient.save(foo);
+		}
+		
+		MangoQuery eqFirst = new MangoQuery().where("title", title)
+				.where("position", 10).where("position", "$lt", 5);
+		MangoQuery eqLast = new MangoQuery().where("title", title)
+				.where("position", "$lt", 5).where("position", 10);
+		assertThat(dbClient.findDocs(eqFirst, Foo.class).size(), is(0));
+		assertThat(dbClient.findDocs(eqLast, Foo.class).size(), is(0));
+		
+		MangoQuery range = new MangoQuery().where("title", title)
+				.where("position", "$gt", 5).where("position", 10);
+		List<Foo> docs = dbClient.findDocs(range, Foo.class);
+		assertThat(docs.size(), is(1));
+		assertThat(docs.get(0).getPosition(), is(10));
+		
+		try {
+			range.where("position", "$gt", 0);
+			fail("Expected a duplicate operator to be rejected.");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+	
+	@Test
+	public void findDocsWithProjection() {
+		String title = "mango-" + System.nanoTime();
+		Foo foo = new Foo(null, title);
+		foo.setTags(Arrays.asList("couchdb", "mango"));
+		dbClient.save(foo);
+		MangoQuery query = new MangoQuery()
+				.where("title", title)
+				.fields(FooTitle.class);
+		
+		List<FooTitle> titles = dbClient.findDocs(query, FooTitle.class);
+		assertThat(titles.size(), is(1));
+		assertThat(titles.get(0).title, is(title));
+		assertNotNull(titles.get(0).id);
+		
+		JsonObject json = dbClient.findDocs(query, JsonObject.class).get(0);
+		assertThat(json.entrySet().size(), is(2));
+		assertFalse(json.has("tags"));
+	}
+	
+	@Test
+	public void mangoIndexes() {
+		MangoIndexes indexes = dbClient.mangoIndexes();
+		indexes.synchronizeAllWithDb();
+		assertTrue(indexNames(indexes.list()).contains("by-title"));
+		
+		assertTrue(indexes.create("foo-index", "by-position", "position"));
+		assertFalse(indexes.create("_design/foo-index", "by-position", "position"));
+		
+		MangoQuery byTitle = new MangoQuery().where("title", MangoQuery.param("title"));
+		MangoIndex index = indexes.explain(byTitle.with("title", "sample"));
+		assertFalse(index.isSpecial());
+		assertThat(index.getName(), is("by-title"));
+		
+		MangoQuery byTags = new MangoQuery().where("tags", "$all", MangoQuery.param("tags"));
+		try {
+			indexes.register("by-tags", byTags);
+			fail("Expected a query with an unbound parameter to be rejected.");
+		} catch (IllegalArgumentException e) {
+		}
+		indexes.register("by-title", byTitle.with("title", "sample"))
+			.register("by-tags", byTags.with("tags", Arrays.asList("sample")));
+		assertThat(indexes.verify(false), is(Arrays.asList("by-tags")));
+		try {
+			indexes.verify(true);
+			fail("Expected a full scan to fail verification.");
+		} catch (CouchDbException e) {
+		}
+		
+		indexes.delete("foo-index", "by-position");
+		assertFalse(indexNames(indexes.list()).contains("by-position"));
+	}
+	
+	private static List<String> indexNames(List<MangoIndex> indexes) {
+		List<String> names = new ArrayList<String>();
+		for (MangoIndex index : indexes) {
+			names.add(index.getName());
+		}
+		return names;
+	}
+	
+	static class FooTitle {
+		@SerializedName("_id")
+		private String id;
+		private String title;
+		private transient int cached;
+	}
 }
@@ -19,13 +19,18 @@ package org.lightcouch.tests;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.UUID;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -35,7 +40,11 @@ import org.lightcouch.Document;
 import org.lightcouch.DocumentConflictException;
 import org.lightcouch.NoDocumentException;
 import org.lightcouch.Page;
+import org.lightcouch.StreamingIterator;
+import org.lightcouch.ViewPage;
+import org.lightcouch.ViewPager;
 import org.lightcouch.ViewResult;
+import org.lightcouch.ViewRowHandler;
 
 import com.google.gson.JsonObject;
 
@@ -65,6 +74,36 @@ public class ViewsTest {
 		assertThat(foos.size(), not(0));
 	}
 
+	@Test
+	public void queryIterator() {
+		StreamingIterator<Foo> iterator = dbClient.view("example/foo")
+				.includeDocs(true)
+				.queryIterator(Foo.class);
+		int count = 0;
+		try {
+			while (iterator.hasNext()) {
+				assertNotNull(iterator.next());
+				count++;
+			}
+		} finally {
+			iterator.close();
+		}
+		assertThat(count, not(0));
+	}
+
+	@Test
+	public void queryViewIterator() {
+		StreamingIterator<ViewResult<int[], String, Foo>.Rows> iterator = dbClient.view("example/by_date")
+				.reduce(false)
+				.queryViewIterator(int[].class, String.class, Foo.class);
+		int count = 0;
+		while (iterator.hasNext()) {
+			assertNotNull(iterator.next().getKey());
+			count++;
+		}
+		assertThat(count, is(3));
+	}
+
 	@Test
 	public void byKey() {
 		List<Foo> foos = dbClient.view("example/foo")
@@ -168,6 +207,65 @@ public class ViewsTest {
 		assertThat(allDocs.size(), not(0));
 	}
 	
+	@Test
+	public void parallelScan() {
+		for (int i = 0; i < 10; i++) {
+			dbClient.save(new Foo());
+		}
+		List<JsonObject> expected = dbClient.view("_all_docs")
+				.query(JsonObject.class);
+		List<JsonObject> scanned = dbClient.view("_all_docs")
+				.parallelScan(4, JsonObject.class);
+		assertThat(scanned, is(expected));
+		
+		final List<JsonObject> handled = new Vector<JsonObject>();
+		dbClient.view("_all_docs").parallelScan(4, JsonObject.class, new ViewRowHandler<JsonObject>() {
+			public void onRow(JsonObject row) {
+				handled.add(row);
+			}
+		});
+		assertThat(new HashSet<JsonObject>(handled), is(new HashSet<JsonObject>(expected)));
+	}
+	
+	@Test
+	public void parallelScan_nestedFindAll() throws Exception {
+		CouchDbStub stub = new CouchDbStub().start();
+		final CouchDbClient stubClient = new CouchDbClient(stub.properties("lightcouch-nested-scan").setMaxConnections(4));
+		try {
+			for (int i = 0; i < 10; i++) {
+				stubClient.save(new Foo());
+			}
+			final String other = stubClient.save(new Foo()).getId();
+			final List<String> found = new Vector<String>();
+			final int otherWorkers = countWorkers(); // of other clients
+			final AtomicInteger workers = new AtomicInteger();
+			Thread scan = new Thread() {
+				public void run() {
+					// two partitions hold two connections, leaving two for the nested requests
+					stubClient.view("_all_docs").parallelScan(2, JsonObject.class, new ViewRowHandler<JsonObject>() {
+						public void onRow(JsonObject row) {
+							String id = row.get("id").getAsString();
+							if(stubClient.findAll(JsonObject.class, Arrays.asList(id, other), 1).getDocuments().size() == 2) {
+								found.add(id);
+							}
+							synchronized (workers) {
+								workers.set(Math.max(workers.get(), countWorkers()));
+							}
+						}
+					});
+				}
+			};
+			scan.start();
+			scan.join(30000);
+			assertFalse(scan.isAlive());
+			assertThat(found.size(), is(10)); // all but the other document
+			assertTrue(workers.get() - otherWorkers <= 4);
+		} finally {
+			stubClient.shutdown();
+			stub.stop();
+		}
+	}
+	
 	@Test
 	public void keyContainSpecialCharacter() {
 		final String key = "+9876543/2";
@@ -186,6 +284,7 @@ public class ViewsTest {
 	}
 
 	@Test
+	@SuppressWarnings("deprecation") // covers the deprecated queryPage
 	public void pagination() {
 		for (int i = 0; i < 7; i++) {
 			Foo foo = new Foo(generateUUID(), "some-val");
@@ -225,6 +324,7 @@ public class ViewsTest {
 	}
 	
 	@Test
+	@SuppressWarnings("deprecation") // covers the deprecated queryPage
 	public void pagination_all_docs() {
 		for (int i = 0; i < 4; i++) {
 			dbClient.save(new Foo());
@@ -240,6 +340,69 @@ public class ViewsTest {
 		assertThat(page.getResultList().size(), is(3));
 	}
 
+	@Test
+	public void keysetPagination_all_docs() {
+		for (int i = 0; i < 7; i++) {
+			dbClient.save(new Foo());
+		}
+		List<String> expected = new ArrayList<String>();
+		for (ViewResult<String, Object, Object>.Rows row : dbClient.view("_all_docs")
+				.queryView(String.class, Object.class, Object.class).getRows()) {
+			expected.add(row.getKey());
+		}
+		
+		ViewPager<String, Object, Document> pager = dbClient.view("_all_docs").pager(3, String.class, Object.class, Document.class);
+		List<String> keys = new ArrayList<String>();
+		String second = null;
+		for (ViewPage<String, Object, Document> page : pager) {
+			assertTrue(page.getRows().size() <= 3);
+			for (ViewResult<String, Object, Document>.Rows row : page.getRows()) {
+				assertThat(row.getDoc().getId(), is(row.getKey()));
+				keys.add(row.getKey());
+			}
+			if(second == null) {
+				second = page.getNextCursor();
+			}
+		}
+		assertThat(keys, is(expected));
+		
+		ViewPage<String, Object, Object> page = dbClient.view("_all_docs")
+				.pager(3, String.class, Object.class, null).page(second);
+		assertThat(page.getRows().get(0).getKey(), is(expected.get(3)));
+		assertNull(page.getRows().get(0).getDoc());
+	}
+
+	@Test
+	public void keysetPagination_all_docs_descending() {
+		for (int i = 0; i < 7; i++) {
+			dbClient.save(new Foo());
+		}
+		List<String> expected = new ArrayList<String>();
+		for (ViewResult<String, Object, Object>.Rows row : dbClient.view("_all_docs").descending(true)
+				.queryView(String.class, Object.class, Object.class).getRows()) {
+			expected.add(row.getKey());
+		}
+		assertTrue(expected.get(0).compareTo(expected.get(1)) > 0);
+		
+		ViewPager<String, Object, Object> pager = dbClient.view("_all_docs").descending(true)
+				.pager(3, String.class, Object.class, null);
+		List<String> keys = new ArrayList<String>();
+		for (ViewPage<String, Object, Object> page : pager) {
+			for (ViewResult<String, Object, Object>.Rows row : page.getRows()) {
+				keys.add(row.getKey());
+			}
+		}
+		assertThat(keys, is(expected));
+		
+		keys.clear();
+		for (ViewResult<String, Object, Object>.Rows row : dbClient.view("_all_docs").descending(true)
+				.startKey(expected.get(2)).endKey(expected.get(5))
+				.queryView(String.class, Object.class, Object.class).getRows()) {
+			keys.add(row.getKey());
+		}
+		assertThat(keys, is(expected.subList(2, 6)));
+	}
+
 	private static void init() {
 		try {
 			Foo foo = null;
@@ -265,4 +428,14 @@ public class ViewsTest {
 	private static String generateUUID() {
 		return UUID.randomUUID().toString().replace("-", "");
 	}
+
+	private static int countWorkers() {
+		int count = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if(thread.getName().equals("lightcouch-worker") && thread.isAlive()) {
+				count++;
+			}
+		}
+		return count;
+	}
 }